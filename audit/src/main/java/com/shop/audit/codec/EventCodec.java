@@ -0,0 +1,60 @@
+package com.shop.audit.codec;
+
+import com.shop.audit.dto.ProductEventDto;
+import com.shop.audit.dto.ProductFailureEventDto;
+import jakarta.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Decoder of the binary events of the product service, field by field without reflection
+// Same layout as the product EventCodec: version, kind, then the fields in declaration order
+// Trailing fields added by a newer product service are skipped
+public final class EventCodec {
+    public static final byte VERSION = 1;
+    private static final byte PRODUCT_EVENT = 1;
+    private static final byte FAILURE_EVENT = 2;
+
+    private EventCodec() {
+    }
+
+    public static ProductEventDto decodeProductEvent(byte[] bytes) {
+        var in = header(bytes, PRODUCT_EVENT);
+        return new ProductEventDto(readString(in), readString(in), in.getFloat(), readString(in));
+    }
+
+    public static ProductFailureEventDto decodeFailureEvent(byte[] bytes) {
+        var in = header(bytes, FAILURE_EVENT);
+        return new ProductFailureEventDto(readVarInt(in), readString(in), readString(in), readString(in), readVarInt(in));
+    }
+
+    private static ByteBuffer header(byte[] bytes, byte kind) {
+        var in = ByteBuffer.wrap(bytes);
+        var version = in.get();
+        if (version != VERSION) throw new IllegalArgumentException("Unsupported event version " + version);
+        var actual = in.get();
+        if (actual != kind) throw new IllegalArgumentException("Unexpected event kind " + actual);
+        return in;
+    }
+
+    // Length + 1 then the UTF-8 bytes, 0 is null
+    @Nullable
+    private static String readString(ByteBuffer in) {
+        var length = readVarInt(in) - 1;
+        if (length < 0) return null;
+        var value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    // 7 bits per byte, high bit set while more follow
+    private static int readVarInt(ByteBuffer in) {
+        var value = 0;
+        for (var shift = 0; shift < 32; shift += 7) {
+            var b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
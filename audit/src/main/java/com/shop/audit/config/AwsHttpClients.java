@@ -0,0 +1,97 @@
+package com.shop.audit.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.crt.AwsCrtAsyncHttpClient;
+import software.amazon.awssdk.http.crt.TcpKeepAliveConfiguration;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.SdkEventLoopGroup;
+import software.amazon.awssdk.metrics.MetricPublisher;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+// HTTP engine of the AWS async clients, one connection pool per client
+// aws.http.<setting> applies to every client, aws.http.<client>.<setting> overrides it for one
+// Netty clients share one event loop group, CRT clients run on the CRT event loops
+@Component
+public class AwsHttpClients implements DisposableBean {
+    private static final Logger LOG = LogManager.getLogger(AwsHttpClients.class);
+    private final Environment env;
+    private final MeterRegistry registry;
+    private final String engine;
+    private SdkEventLoopGroup eventLoops; // Created with the first Netty client
+    private final List<SdkAsyncHttpClient> clients = new ArrayList<>();
+
+    public AwsHttpClients(Environment env, MeterRegistry registry) {
+        this.env = env;
+        this.registry = registry;
+        this.engine = env.getProperty("aws.http.client", "netty");
+    }
+
+    public synchronized SdkAsyncHttpClient create(String client) {
+        var maxConcurrency = this.setting(client, "max.concurrency", Integer.class);
+        var idle = Duration.ofSeconds(this.setting(client, "connection.max.idle.seconds", Long.class));
+        var connect = Duration.ofSeconds(this.setting(client, "connection.timeout.seconds", Long.class));
+        var keepAlive = this.setting(client, "tcp.keep.alive", Boolean.class);
+        LOG.info("AWS HTTP - {} - {} - max concurrency {}", client, this.engine, maxConcurrency);
+        var http = "crt".equals(this.engine)
+                ? AwsCrtAsyncHttpClient.builder()
+                        .maxConcurrency(maxConcurrency)
+                        .connectionMaxIdleTime(idle)
+                        .connectionTimeout(connect)
+                        .tcpKeepAliveConfiguration(keepAlive
+                                ? TcpKeepAliveConfiguration.builder()
+                                        .keepAliveInterval(Duration.ofSeconds(30))
+                                        .keepAliveTimeout(Duration.ofSeconds(5))
+                                        .build()
+                                : null)
+                        .build()
+                : NettyNioAsyncHttpClient.builder()
+                        .eventLoopGroup(this.eventLoops())
+                        .maxConcurrency(maxConcurrency)
+                        // Requests waiting for a connection, fail fast beyond it instead of queueing forever
+                        .maxPendingConnectionAcquires(this.setting(client, "max.pending.acquires", Integer.class))
+                        .connectionAcquisitionTimeout(Duration.ofSeconds(this.setting(client, "acquire.timeout.seconds", Long.class)))
+                        // Spreads load over new DynamoDB/SQS hosts instead of pinning to old connections
+                        .connectionTimeToLive(Duration.ofSeconds(this.setting(client, "connection.ttl.seconds", Long.class)))
+                        .connectionMaxIdleTime(idle)
+                        .connectionTimeout(connect)
+                        .tcpKeepAlive(keepAlive)
+                        .build();
+        this.clients.add(http);
+        return http;
+    }
+
+    // Leased, pending and available connections of the pool of a client, see HttpPoolMetrics
+    public MetricPublisher metrics(String client) {
+        return new HttpPoolMetrics(this.registry, client);
+    }
+
+    @Override
+    public synchronized void destroy() {
+        this.clients.forEach(SdkAsyncHttpClient::close);
+        if (this.eventLoops != null) this.eventLoops.eventLoopGroup().shutdownGracefully();
+    }
+
+    private SdkEventLoopGroup eventLoops() {
+        if (this.eventLoops == null) {
+            var threads = this.env.getProperty("aws.http.event.loop.threads", Integer.class, 0);
+            this.eventLoops = threads > 0
+                    ? SdkEventLoopGroup.builder().numberOfThreads(threads).build()
+                    : SdkEventLoopGroup.builder().build(); // SDK default, from the available processors
+        }
+        return this.eventLoops;
+    }
+
+    private <T> T setting(String client, String name, Class<T> type) {
+        var shared = this.env.getRequiredProperty("aws.http." + name, type);
+        return this.env.getProperty("aws.http." + client + "." + name, type, shared);
+    }
+}
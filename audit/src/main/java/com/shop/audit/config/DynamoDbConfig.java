@@ -15,14 +15,25 @@ public class DynamoDbConfig {
     @Value("${aws.region}")
     private String region;
 
+    private final AwsHttpClients http;
+    private final AwsMetricsInterceptor metrics;
+
+    public DynamoDbConfig(AwsHttpClients http, AwsMetricsInterceptor metrics) {
+        this.http = http;
+        this.metrics = metrics;
+    }
+
     @Bean
     public DynamoDbAsyncClient dynamoDbAsyncClient() {
         var config = ClientOverrideConfiguration.builder()
                 .addExecutionInterceptor(new TracingInterceptor()) // Xray tracing
+                .addExecutionInterceptor(this.metrics) // Latency histograms, aws.calls
+                .addMetricPublisher(this.http.metrics("dynamodb"))
                 .build();
         return DynamoDbAsyncClient.builder()
                 .credentialsProvider(DefaultCredentialsProvider.create())
                 .region(Region.of(region))
+                .httpClient(this.http.create("dynamodb")) // Own pool, aws.http.dynamodb.* settings
                 .overrideConfiguration(config)
                 .build();
     }
@@ -14,14 +14,25 @@ public class SqsConfig {
     @Value("${aws.region}")
     private String region;
 
+    private final AwsHttpClients http;
+    private final AwsMetricsInterceptor metrics;
+
+    public SqsConfig(AwsHttpClients http, AwsMetricsInterceptor metrics) {
+        this.http = http;
+        this.metrics = metrics;
+    }
+
     @Bean
     public SqsAsyncClient sqsClient() {
         var config = ClientOverrideConfiguration.builder()
                 .addExecutionInterceptor(new TracingInterceptor()) // Xray tracing
+                .addExecutionInterceptor(this.metrics) // Latency histograms, aws.calls
+                .addMetricPublisher(this.http.metrics("sqs"))
                 .build();
         return SqsAsyncClient.builder()
                 .credentialsProvider(DefaultCredentialsProvider.create())
                 .region(Region.of(region))
+                .httpClient(this.http.create("sqs")) // Own pool, aws.http.sqs.* settings
                 .overrideConfiguration(config)
                 .build();
     }
@@ -7,6 +7,7 @@ public record ProductFailureEventDto(
         int status,
         String error,
         String email,
-        String id
+        String id,
+        int count // 0 for events published before failures were merged
 ) {
 }
@@ -2,6 +2,8 @@ package com.shop.audit.dto;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.Base64;
+
 public record SnsEventDto(
     @JsonProperty("MessageId")
     String eventId,
@@ -16,4 +18,13 @@ public record SnsEventDto(
     @JsonProperty("MessageAttributes")
     SqsEventAttributes attributes
 ) {
+    public static final String BINARY = "application/x-shop-event"; // Base64 of EventCodec
+
+    public boolean isBinary() {
+        return this.attributes.contentType() != null && BINARY.equals(this.attributes.contentType().value());
+    }
+
+    public byte[] binaryMessage() {
+        return Base64.getDecoder().decode(this.message);
+    }
 }
@@ -3,6 +3,8 @@ package com.shop.audit.dto;
 public record SqsEventAttributes(
         SqsEventAttribute traceId,
         SqsEventAttribute eventType,
-        SqsEventAttribute requestId
+        SqsEventAttribute requestId,
+        // Absent on JSON events published before the attribute existed
+        SqsEventAttribute contentType
 ) {
 }
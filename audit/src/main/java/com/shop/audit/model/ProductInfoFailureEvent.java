@@ -10,6 +10,7 @@ public class ProductInfoFailureEvent {
     private int status;
     private String error;
     private String traceId;
+    private int count;
 
     public String getId() {
         return id;
@@ -58,4 +59,12 @@ public class ProductInfoFailureEvent {
     public void setTraceId(String traceId) {
         this.traceId = traceId;
     }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
 }
@@ -15,9 +15,11 @@ import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import software.amazon.awssdk.enhanced.dynamodb.model.Page;
+import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
 
 import java.time.Instant;
 import java.util.Map;
@@ -47,6 +49,7 @@ public class ProductEventRepository {
                 .queryConditional(condition)
                 .exclusiveStartKey(startKey)
                 .limit(take)
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
                 .build();
         var pagesCount = 1;
         return this.table.query(request).limit(pagesCount);
@@ -63,6 +66,7 @@ public class ProductEventRepository {
                 .queryConditional(condition)
                 .exclusiveStartKey(startKey)
                 .limit(take)
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
                 .build();
         var pagesCount = 1;
         return this.table.query(request).limit(pagesCount);
@@ -77,7 +81,10 @@ public class ProductEventRepository {
         var timestamp = Instant.now().toEpochMilli();
         var ttl = Instant.now().plusSeconds(300).getEpochSecond(); // 5m
         var event = createProductEvent(dto, eventType, timestamp, ttl, eventId, requestId, traceId);
-        return this.table.putItem(event);
+        return this.table.putItem(PutItemEnhancedRequest.builder(ProductEvent.class)
+                .item(event)
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL) // For aws.dynamodb.capacity
+                .build());
     }
 
     private static ProductEvent createProductEvent(
@@ -11,6 +11,8 @@ import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncTable;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
 
 import java.time.Instant;
 import java.util.concurrent.CompletableFuture;
@@ -39,7 +41,10 @@ public class ProductFailureEventRepository {
         var createdAt = Instant.now().toEpochMilli();
         var ttl = Instant.now().plusSeconds(300).getEpochSecond(); // 5m
         var event = createProductEvent(dto, eventType, createdAt, ttl, eventId, requestId, traceId);
-        return this.table.putItem(event);
+        return this.table.putItem(PutItemEnhancedRequest.builder(ProductFailureEvent.class)
+                .item(event)
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL) // For aws.dynamodb.capacity
+                .build());
     }
 
     private static ProductFailureEvent createProductEvent(
@@ -74,6 +79,7 @@ public class ProductFailureEventRepository {
         info.setEventId(eventId);
         info.setRequestId(requestId);
         info.setTraceId(traceId);
+        info.setCount(Math.max(dto.count(), 1));
         return info;
     }
 }
@@ -4,6 +4,7 @@ import com.amazonaws.xray.AWSXRay;
 import com.amazonaws.xray.entities.Segment;
 import com.amazonaws.xray.entities.TraceID;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.audit.codec.EventCodec;
 import com.shop.audit.dto.EventType;
 import com.shop.audit.dto.ProductFailureEventDto;
 import com.shop.audit.dto.SnsEventDto;
@@ -11,7 +12,9 @@ import com.shop.audit.repository.ProductFailureEventRepository;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.ThreadContext;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import software.amazon.awssdk.services.sqs.SqsAsyncClient;
@@ -32,16 +35,19 @@ public class FailureSubscriber {
     private final ProductFailureEventRepository repository;
     private final String sqsUrl;
     private final ReceiveMessageRequest request;
+    private final AsyncTaskExecutor executor;
 
     public FailureSubscriber(
             ObjectMapper mapper,
             SqsAsyncClient sqsClient,
             ProductFailureEventRepository repository,
-            @Value("${aws.sqs.product.failure.url}") String sqsUrl) {
+            @Value("${aws.sqs.product.failure.url}") String sqsUrl,
+            @Qualifier("applicationTaskExecutor") AsyncTaskExecutor executor) {
         this.mapper = mapper;
         this.sqsClient = sqsClient;
         this.repository = repository;
         this.sqsUrl = sqsUrl;
+        this.executor = executor;
 
         this.request = ReceiveMessageRequest.builder()
                 .maxNumberOfMessages(5)
@@ -54,33 +60,39 @@ public class FailureSubscriber {
         List<Message> events;
         while (!(events = this.poll()).isEmpty()) {
             LOG.info("sqs - failure - subscription - {} events", events.size());
-            events.parallelStream().forEach(event -> {
-                SnsEventDto snsEvent;
-                try {
-                    snsEvent = this.mapper.readValue(event.body(), SnsEventDto.class);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-
-                var segment = createXraySegment(snsEvent);
-                segment.run(() -> {
-                    try {
-                        putTracingInfo(snsEvent);
-                        CompletableFuture.allOf(this.processByType(snsEvent), this.delete(event)).join();
-                        LOG.info("sqs - failure - subscription - event deleted");
-                    } catch (Exception ex) {
-                        LOG.error("sqs - failure - event parse error");
-                        throw new RuntimeException(ex);
-                    } finally {
-                        clearTracingInfo();
-                        closeSegment(segment);
-                    }
-                }, AWSXRay.getGlobalRecorder());
-            });
+            // One task per event, each blocks on its own DynamoDB and SQS calls
+            var handled = events.stream()
+                    .map(event -> CompletableFuture.runAsync(() -> this.handle(event), this.executor))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(handled).join();
         }
         AWSXRay.endSegment();
     }
 
+    private void handle(Message event) {
+        SnsEventDto snsEvent;
+        try {
+            snsEvent = this.mapper.readValue(event.body(), SnsEventDto.class);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        var segment = createXraySegment(snsEvent);
+        segment.run(() -> {
+            try {
+                putTracingInfo(snsEvent);
+                CompletableFuture.allOf(this.processByType(snsEvent), this.delete(event)).join();
+                LOG.info("sqs - failure - subscription - event deleted");
+            } catch (Exception ex) {
+                LOG.error("sqs - failure - event parse error");
+                throw new RuntimeException(ex);
+            } finally {
+                clearTracingInfo();
+                closeSegment(segment);
+            }
+        }, AWSXRay.getGlobalRecorder());
+    }
+
     private static Segment createXraySegment(SnsEventDto snsEvent) {
         var startAt = Instant.now().getEpochSecond();
         var traceId = TraceID.fromString(snsEvent.attributes().traceId().value());
@@ -108,7 +120,9 @@ public class FailureSubscriber {
         var type = EventType.valueOf(value);
         if (type == EventType.PRODUCT_FAILURE) {
             LOG.info("sqs - failure - subscription - process event: {}", value);
-            var failure = this.mapper.readValue(snsEvent.message(), ProductFailureEventDto.class);
+            var failure = snsEvent.isBinary()
+                    ? EventCodec.decodeFailureEvent(snsEvent.binaryMessage())
+                    : this.mapper.readValue(snsEvent.message(), ProductFailureEventDto.class);
             LOG.info("sqs - failure - subscription - event: {} - product: {}", value, failure.id());
             return this.save(snsEvent, failure, type);
         } else {
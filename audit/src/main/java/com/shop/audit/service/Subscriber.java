@@ -5,6 +5,7 @@ import com.amazonaws.xray.entities.Segment;
 import com.amazonaws.xray.entities.TraceID;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.audit.codec.EventCodec;
 import com.shop.audit.dto.EventType;
 import com.shop.audit.dto.ProductEventDto;
 import com.shop.audit.dto.SnsEventDto;
@@ -12,7 +13,9 @@ import com.shop.audit.repository.ProductEventRepository;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.ThreadContext;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import software.amazon.awssdk.services.sqs.SqsAsyncClient;
@@ -33,12 +36,15 @@ public class Subscriber {
     private final String sqsUrl;
     private final ReceiveMessageRequest request;
     private final ProductEventRepository repository;
+    private final AsyncTaskExecutor executor;
 
     public Subscriber(
             @Value("${aws.sqs.product.url}") String sqsUrl,
             ObjectMapper mapper,
             SqsAsyncClient sqsClient,
-            ProductEventRepository repository
+            ProductEventRepository repository,
+            // Virtual threads with spring.threads.virtual.enabled, the shared pool otherwise
+            @Qualifier("applicationTaskExecutor") AsyncTaskExecutor executor
     ) {
         this.mapper = mapper;
         this.sqsClient = sqsClient;
@@ -49,6 +55,7 @@ public class Subscriber {
                 .queueUrl(sqsUrl)
                 .build();
         this.repository = repository;
+        this.executor = executor;
     }
 
     @Scheduled(fixedDelay = 1000)
@@ -56,33 +63,39 @@ public class Subscriber {
         List<Message> events;
         while (!(events = this.poll()).isEmpty()) {
             LOG.info("sqs - subscription - {} events", events.size());
-            events.parallelStream().forEach(event -> {
-                SnsEventDto snsEvent;
-                try {
-                    snsEvent = this.mapper.readValue(event.body(), SnsEventDto.class);
-                } catch (JsonProcessingException e) {
-                    throw new RuntimeException(e);
-                }
-
-                var segment = createXraySegment(snsEvent);
-                segment.run(() -> {
-                    try {
-                        putTracingInfo(snsEvent);
-                        CompletableFuture.allOf(this.processByType(snsEvent), this.delete(event)).join();
-                        LOG.info("sqs - subscription - event deleted");
-                    } catch (Exception ex) {
-                        LOG.error("sqs - subscription - event parse error");
-                        throw new RuntimeException(ex);
-                    } finally {
-                        clearTracingInfo();
-                        closeSegment(segment);
-                    }
-                }, AWSXRay.getGlobalRecorder()); // Records the segment
-            });
+            // One task per event, each blocks on its own DynamoDB and SQS calls
+            var handled = events.stream()
+                    .map(event -> CompletableFuture.runAsync(() -> this.handle(event), this.executor))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(handled).join();
         }
         AWSXRay.endSegment();
     }
 
+    private void handle(Message event) {
+        SnsEventDto snsEvent;
+        try {
+            snsEvent = this.mapper.readValue(event.body(), SnsEventDto.class);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+
+        var segment = createXraySegment(snsEvent);
+        segment.run(() -> {
+            try {
+                putTracingInfo(snsEvent);
+                CompletableFuture.allOf(this.processByType(snsEvent), this.delete(event)).join();
+                LOG.info("sqs - subscription - event deleted");
+            } catch (Exception ex) {
+                LOG.error("sqs - subscription - event parse error");
+                throw new RuntimeException(ex);
+            } finally {
+                clearTracingInfo();
+                closeSegment(segment);
+            }
+        }, AWSXRay.getGlobalRecorder()); // Records the segment
+    }
+
     private static void closeSegment(Segment segment) {
         var endedAt = Instant.now().getEpochSecond();
         segment.setEndTime(endedAt);
@@ -114,7 +127,9 @@ public class Subscriber {
         switch (type) {
             case PRODUCT_CREATED, PRODUCT_UPDATED, PRODUCT_DELETED -> {
                 LOG.info("sqs - subscription - process event: {}", value);
-                var event = this.mapper.readValue(snsEvent.message(), ProductEventDto.class);
+                var event = snsEvent.isBinary()
+                        ? EventCodec.decodeProductEvent(snsEvent.binaryMessage())
+                        : this.mapper.readValue(snsEvent.message(), ProductEventDto.class);
                 LOG.info("sqs - subscription - event: {} - product: {}", value, event.id());
                 return this.save(snsEvent, event, type);
             }
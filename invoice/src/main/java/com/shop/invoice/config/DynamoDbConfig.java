@@ -15,6 +15,14 @@ public class DynamoDbConfig {
     @Value("${aws.region}")
     private String region;
 
+    private final AwsHttpClients http;
+    private final AwsMetricsInterceptor metrics;
+
+    public DynamoDbConfig(AwsHttpClients http, AwsMetricsInterceptor metrics) {
+        this.http = http;
+        this.metrics = metrics;
+    }
+
     @Bean
     public DynamoDbEnhancedAsyncClient dynamoDbEnhancedAsyncClient() {
         return DynamoDbEnhancedAsyncClient.builder()
@@ -27,10 +35,13 @@ public class DynamoDbConfig {
         var xray = new TracingInterceptor();
         var config = ClientOverrideConfiguration.builder()
                 .addExecutionInterceptor(xray) // Xray tracing
+                .addExecutionInterceptor(this.metrics) // Latency histograms, aws.calls
+                .addMetricPublisher(this.http.metrics("dynamodb"))
                 .build();
         return DynamoDbAsyncClient.builder()
                 .credentialsProvider(DefaultCredentialsProvider.create())
                 .region(Region.of(region))
+                .httpClient(this.http.create("dynamodb")) // Own pool, aws.http.dynamodb.* settings
                 .overrideConfiguration(config)
                 .build();
     }
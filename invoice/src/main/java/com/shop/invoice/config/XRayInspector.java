@@ -1,10 +1,12 @@
 package com.shop.invoice.config;
 
+import com.amazonaws.xray.AWSXRay;
 import com.amazonaws.xray.entities.Subsegment;
 import com.amazonaws.xray.spring.aop.BaseAbstractXRayInterceptor;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.Map;
@@ -12,6 +14,22 @@ import java.util.Map;
 @Aspect
 @Component
 public class XRayInspector extends BaseAbstractXRayInterceptor {
+    private final boolean sampledOnly;
+
+    public XRayInspector(@Value("${aws.xray.inspector.sampled.only}") boolean sampledOnly) {
+        this.sampledOnly = sampledOnly;
+    }
+
+    // Unsampled requests are never sent to X-Ray, skips the subsegment and metadata built for nothing
+    // Reads the thread local entity only, nothing allocated on this path
+    @Override
+    protected Object processXRayTrace(ProceedingJoinPoint pjp) throws Throwable {
+        if (this.sampledOnly) {
+            var entity = AWSXRay.getTraceEntity();
+            if (entity == null || !entity.getParentSegment().isSampled()) return pjp.proceed();
+        }
+        return super.processXRayTrace(pjp);
+    }
 
     @Override
     protected Map<String, Map<String, Object>> generateMetadata(ProceedingJoinPoint joinPoint, Subsegment segment) {
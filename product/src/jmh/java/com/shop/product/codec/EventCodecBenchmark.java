@@ -0,0 +1,90 @@
+package com.shop.product.codec;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.product.dto.ProductEventDto;
+import com.shop.product.dto.ProductFailureEventDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Encode and decode cost of the event bodies, JSON with the Spring ObjectMapper against EventCodec
+// Payload sizes, the base64 one is what goes over SNS:
+// product event - json 116 bytes - binary 80 bytes - base64 108 bytes
+// failure event - json 127 bytes - binary 80 bytes - base64 108 bytes
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class EventCodecBenchmark {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private ProductEventDto event;
+    private ProductFailureEventDto failure;
+    private String eventJson;
+    private byte[] eventBinary;
+    private String failureJson;
+    private byte[] failureBinary;
+
+    @Setup
+    public void setup() throws JsonProcessingException {
+        this.event = new ProductEventDto(UUID.randomUUID().toString(), "SKU-4711-BLUE-XL", 129.99f, "xrmeng720@gmail.com");
+        this.failure = new ProductFailureEventDto(404, "Product not found", "xrmeng720@gmail.com", UUID.randomUUID().toString(), 12);
+        this.eventJson = this.mapper.writeValueAsString(this.event);
+        this.eventBinary = EventCodec.encode(this.event);
+        this.failureJson = this.mapper.writeValueAsString(this.failure);
+        this.failureBinary = EventCodec.encode(this.failure);
+    }
+
+    @Benchmark
+    public String encodeEventJson() throws JsonProcessingException {
+        return this.mapper.writeValueAsString(this.event);
+    }
+
+    @Benchmark
+    public String encodeEventBinary() {
+        return Base64.getEncoder().encodeToString(EventCodec.encode(this.event));
+    }
+
+    @Benchmark
+    public ProductEventDto decodeEventJson() throws JsonProcessingException {
+        return this.mapper.readValue(this.eventJson, ProductEventDto.class);
+    }
+
+    @Benchmark
+    public ProductEventDto decodeEventBinary() {
+        return EventCodec.decodeProductEvent(this.eventBinary);
+    }
+
+    @Benchmark
+    public String encodeFailureJson() throws JsonProcessingException {
+        return this.mapper.writeValueAsString(this.failure);
+    }
+
+    @Benchmark
+    public String encodeFailureBinary() {
+        return Base64.getEncoder().encodeToString(EventCodec.encode(this.failure));
+    }
+
+    @Benchmark
+    public ProductFailureEventDto decodeFailureJson() throws JsonProcessingException {
+        return this.mapper.readValue(this.failureJson, ProductFailureEventDto.class);
+    }
+
+    @Benchmark
+    public ProductFailureEventDto decodeFailureBinary() {
+        return EventCodec.decodeFailureEvent(this.failureBinary);
+    }
+}
@@ -0,0 +1,96 @@
+package com.shop.product.config;
+
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.AWSXRayRecorderBuilder;
+import com.amazonaws.xray.emitters.Emitter;
+import com.amazonaws.xray.entities.Segment;
+import com.amazonaws.xray.entities.Subsegment;
+import com.amazonaws.xray.spring.aop.XRayEnabled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.concurrent.TimeUnit;
+
+// Per call overhead of XRayInspector on an @XRayEnabled bean, against the plain method call
+// sampled=false is the common case in production, the default rules sample a few requests per second
+// Segments go to a no-op emitter, run with -prof gc to see the allocations per call
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class XRayInspectorBenchmark {
+    @Param({"true", "false"})
+    private boolean sampled;
+
+    @Param({"true", "false"}) // aws.xray.inspector.sampled.only
+    private boolean sampledOnly;
+
+    private Target direct;
+    private Target traced;
+    private Segment segment;
+
+    @XRayEnabled
+    public static class Target {
+        public String get(String id) {
+            return id;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        AWSXRay.setGlobalRecorder(AWSXRayRecorderBuilder.standard()
+                .withEmitter(new Emitter() {
+                    @Override
+                    public boolean sendSegment(Segment segment) {
+                        return true;
+                    }
+
+                    @Override
+                    public boolean sendSubsegment(Subsegment subsegment) {
+                        return true;
+                    }
+                })
+                .build());
+        this.direct = new Target();
+        var factory = new AspectJProxyFactory(new Target());
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new XRayInspector(this.sampledOnly));
+        this.traced = factory.getProxy();
+    }
+
+    // A fresh segment per iteration, sampled subsegments pile up in it otherwise
+    @Setup(Level.Iteration)
+    public void begin() {
+        this.segment = AWSXRay.beginSegment("benchmark");
+        this.segment.setSampled(this.sampled);
+    }
+
+    @TearDown(Level.Iteration)
+    public void end() {
+        AWSXRay.endSegment();
+    }
+
+    @Benchmark
+    public String direct() {
+        return this.direct.get("4711");
+    }
+
+    @Benchmark
+    public String traced() {
+        return this.traced.get("4711");
+    }
+}
@@ -0,0 +1,92 @@
+package com.shop.product.dto;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.product.model.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Work done on every product request between the controller and the repository
+// ProductDto <-> Product mapping and the Jackson bodies of the API and of the SNS events
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ProductDtoBenchmark {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private ProductDto dto;
+    private Product product;
+    private ProductEventDto event;
+    private String dtoJson;
+    private String eventJson;
+
+    @Setup
+    public void setup() throws JsonProcessingException {
+        this.dto = new ProductDto(
+                UUID.randomUUID().toString(),
+                "Trail running shoe",
+                "https://shop.example.com/products/sku-4711-blue-xl",
+                "SKU-4711-BLUE-XL",
+                "TR-2024",
+                129.99f);
+        this.product = ProductDto.toProduct(this.dto);
+        this.event = new ProductEventDto(this.dto.id(), this.dto.code(), this.dto.price(), "xrmeng720@gmail.com");
+        this.dtoJson = this.mapper.writeValueAsString(this.dto);
+        this.eventJson = this.mapper.writeValueAsString(this.event);
+    }
+
+    @Benchmark
+    public Product toProduct() {
+        return ProductDto.toProduct(this.dto);
+    }
+
+    @Benchmark
+    public ProductDto fromProduct() {
+        return new ProductDto(this.product);
+    }
+
+    @Benchmark
+    public String writeProductDto() throws JsonProcessingException {
+        return this.mapper.writeValueAsString(this.dto);
+    }
+
+    @Benchmark
+    public ProductDto readProductDto() throws JsonProcessingException {
+        return this.mapper.readValue(this.dtoJson, ProductDto.class);
+    }
+
+    // GET /api/products/{id}, from the DynamoDB item to the response body
+    @Benchmark
+    public byte[] getResponse() throws JsonProcessingException {
+        return this.mapper.writeValueAsBytes(new ProductDto(this.product));
+    }
+
+    // POST /api/products, from the request body to the item to write
+    @Benchmark
+    public Product postRequest() throws JsonProcessingException {
+        return ProductDto.toProduct(this.mapper.readValue(this.dtoJson, ProductDto.class));
+    }
+
+    @Benchmark
+    public String writeProductEventDto() throws JsonProcessingException {
+        return this.mapper.writeValueAsString(this.event);
+    }
+
+    @Benchmark
+    public ProductEventDto readProductEventDto() throws JsonProcessingException {
+        return this.mapper.readValue(this.eventJson, ProductEventDto.class);
+    }
+}
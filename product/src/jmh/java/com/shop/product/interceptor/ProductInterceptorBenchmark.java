@@ -0,0 +1,102 @@
+package com.shop.product.interceptor;
+
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.AWSXRayRecorderBuilder;
+import com.amazonaws.xray.emitters.Emitter;
+import com.amazonaws.xray.entities.Segment;
+import com.amazonaws.xray.entities.Subsegment;
+import jakarta.servlet.DispatcherType;
+import org.apache.logging.log4j.ThreadContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+// ThreadContext and X-Ray bookkeeping around every product request
+// syncRequest is a blocking endpoint, asyncRequest one returning a future that is dispatched back
+// continuation is one hop through RequestContext.executor() in the repository chains
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ProductInterceptorBenchmark {
+    private final ProductInterceptor interceptor = new ProductInterceptor();
+    private final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/products/4711");
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+    private final Object handler = new Object();
+    private Segment segment;
+
+    @Setup
+    public void setup() {
+        AWSXRay.setGlobalRecorder(AWSXRayRecorderBuilder.standard()
+                .withEmitter(new Emitter() {
+                    @Override
+                    public boolean sendSegment(Segment segment) {
+                        return true;
+                    }
+
+                    @Override
+                    public boolean sendSubsegment(Subsegment subsegment) {
+                        return true;
+                    }
+                })
+                .build());
+        this.request.addHeader("requestId", UUID.randomUUID().toString());
+    }
+
+    @Setup(Level.Iteration)
+    public void begin() {
+        this.segment = AWSXRay.beginSegment("benchmark");
+    }
+
+    @TearDown(Level.Iteration)
+    public void end() {
+        AWSXRay.endSegment();
+    }
+
+    @Benchmark
+    public void syncRequest() throws Exception {
+        this.request.setDispatcherType(DispatcherType.REQUEST);
+        this.interceptor.preHandle(this.request, this.response, this.handler);
+        this.interceptor.postHandle(this.request, this.response, this.handler, null);
+        this.interceptor.afterCompletion(this.request, this.response, this.handler, null);
+    }
+
+    @Benchmark
+    public void asyncRequest() throws Exception {
+        this.request.setDispatcherType(DispatcherType.REQUEST);
+        this.interceptor.preHandle(this.request, this.response, this.handler);
+        this.interceptor.afterConcurrentHandlingStarted(this.request, this.response, this.handler);
+        this.request.setDispatcherType(DispatcherType.ASYNC);
+        this.interceptor.preHandle(this.request, this.response, this.handler);
+        this.interceptor.postHandle(this.request, this.response, this.handler, null);
+        this.interceptor.afterCompletion(this.request, this.response, this.handler, null);
+        AWSXRay.setTraceEntity(this.segment); // Cleared by the async dispatch, the filter thread still has it
+    }
+
+    @Benchmark
+    public Executor continuation() {
+        ThreadContext.put("requestId", "4711");
+        var executor = RequestContext.executor();
+        executor.execute(() -> {
+        });
+        ThreadContext.clearAll();
+        return executor;
+    }
+}
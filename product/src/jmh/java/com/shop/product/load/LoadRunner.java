@@ -0,0 +1,199 @@
+package com.shop.product.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.product.ProductApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.yaml.snakeyaml.Yaml;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+// Runs an artillery script against ProductApplication on the in-memory DynamoDB and SNS
+// ./gradlew loadBenchmark [-Pscript=../shop-infra/loadtest-threads.yaml] [-Pscale=0.1]
+// Open model like artillery, arrivalRate new scenarios per second whatever the latency, scale shortens the phases
+// Knows the parts of the scripts in shop-infra: phases, http.timeout, post/get steps with json and capture json "$.x"
+// Script urls are the API Gateway ones, /products here is /api/products
+public final class LoadRunner {
+    private static final Pattern TEMPLATE = Pattern.compile("\\{\\{\\s*(.+?)\\s*}}");
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final String baseUrl;
+    private final Duration timeout;
+    private final List<Map<String, Map<String, Object>>> flow;
+
+    private LoadRunner(String baseUrl, Duration timeout, List<Map<String, Map<String, Object>>> flow) {
+        this.baseUrl = baseUrl;
+        this.timeout = timeout;
+        this.flow = flow;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static void main(String[] args) throws Exception {
+        var script = Path.of(args.length > 0 ? args[0] : "../shop-infra/loadtest.yaml");
+        var scale = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+        Map<String, Object> yaml = new Yaml().load(Files.readString(script));
+        var config = (Map<String, Object>) yaml.get("config");
+        var phases = (List<Map<String, Object>>) config.get("phases");
+        var timeout = ((Map<String, Object>) config.getOrDefault("http", Map.of())).getOrDefault("timeout", 29);
+        var scenario = ((List<Map<String, Object>>) yaml.get("scenarios")).getFirst();
+        var flow = (List<Map<String, Map<String, Object>>>) scenario.get("flow");
+
+        var context = new SpringApplicationBuilder(ProductApplication.class)
+                .profiles("inmemory")
+                .properties("server.port=0")
+                .run();
+        try {
+            var port = context.getEnvironment().getRequiredProperty("local.server.port");
+            var runner = new LoadRunner("http://localhost:" + port + "/api", Duration.ofSeconds(((Number) timeout).longValue()), flow);
+            System.out.printf("%nLoad - %s - scale %s%n", script, scale);
+            for (var i = 0; i < phases.size(); i++) {
+                var phase = phases.get(i);
+                var name = String.valueOf(phase.getOrDefault("name", "phase " + (i + 1)));
+                var duration = Math.max(1, Math.round(((Number) phase.get("duration")).doubleValue() * scale));
+                runner.phase(name, duration, ((Number) phase.get("arrivalRate")).intValue());
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    // Starts arrivalRate scenarios every second, spread over the second, then waits for all of them
+    private void phase(String name, long seconds, int arrivalRate) {
+        var latencies = new ConcurrentHashMap<String, Queue<Long>>();
+        var errors = new AtomicInteger();
+        var scenarios = new ConcurrentLinkedQueue<CompletableFuture<Void>>();
+        var arrivals = Executors.newSingleThreadScheduledExecutor();
+        var start = System.nanoTime();
+        var interval = TimeUnit.SECONDS.toNanos(1) / arrivalRate;
+        for (long arrival = 0; arrival < seconds * arrivalRate; arrival++) {
+            arrivals.schedule(() -> scenarios.add(this.scenario(latencies, errors)), arrival * interval, TimeUnit.NANOSECONDS);
+        }
+        arrivals.shutdown();
+        try {
+            arrivals.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        CompletableFuture.allOf(scenarios.toArray(CompletableFuture[]::new)).exceptionally(e -> null).join();
+        var elapsed = (System.nanoTime() - start) / 1e9;
+        var requests = latencies.values().stream().mapToInt(Queue::size).sum();
+        System.out.printf("%n%s - %ds at %d/s - %d scenarios - %d requests - %.1f requests/s - %d errors%n",
+                name, seconds, arrivalRate, scenarios.size(), requests, requests / elapsed, errors.get());
+        System.out.printf("  %-40s %8s %8s %8s %8s %8s %8s%n", "step", "count", "p50 ms", "p90 ms", "p99 ms", "p999 ms", "max ms");
+        latencies.forEach((step, values) -> {
+            var sorted = values.stream().mapToLong(Long::longValue).sorted().toArray();
+            System.out.printf("  %-40s %8d %8.1f %8.1f %8.1f %8.1f %8.1f%n", step, sorted.length,
+                    percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99),
+                    percentile(sorted, 0.999), sorted[sorted.length - 1] / 1e6);
+        });
+    }
+
+    // Steps one after the other, each with the values captured by the previous ones
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<Void> scenario(Map<String, Queue<Long>> latencies, AtomicInteger errors) {
+        var variables = new HashMap<String, String>();
+        var chain = CompletableFuture.<Boolean>completedFuture(true);
+        for (var step : this.flow) {
+            var entry = step.entrySet().iterator().next();
+            var method = entry.getKey().toUpperCase();
+            var spec = entry.getValue();
+            chain = chain.thenCompose(ok -> {
+                if (!ok) return CompletableFuture.completedFuture(false); // Nothing captured to go on with
+                var url = String.valueOf(spec.get("url"));
+                var request = HttpRequest.newBuilder(URI.create(this.baseUrl + this.fill(url, variables)))
+                        .timeout(this.timeout)
+                        .header("Content-Type", "application/json");
+                if (spec.containsKey("json"))
+                    request.method(method, HttpRequest.BodyPublishers.ofString(this.json(spec.get("json"), variables)));
+                else
+                    request.method(method, HttpRequest.BodyPublishers.noBody());
+                var started = System.nanoTime();
+                return this.http.sendAsync(request.build(), HttpResponse.BodyHandlers.ofString()).handle((response, e) -> {
+                    latencies.computeIfAbsent(method + " " + url, ignored -> new ConcurrentLinkedQueue<>())
+                            .add(System.nanoTime() - started);
+                    if (e != null || response.statusCode() >= 400) {
+                        errors.incrementAndGet();
+                        return false;
+                    }
+                    for (var capture : (List<Map<String, String>>) spec.getOrDefault("capture", List.of()))
+                        variables.put(capture.get("as"), this.capture(response.body(), capture.get("json")));
+                    return true;
+                });
+            });
+        }
+        return chain.thenAccept(ignored -> {
+        });
+    }
+
+    private String fill(String template, Map<String, String> variables) {
+        return TEMPLATE.matcher(template).replaceAll(match -> match.group(1).equals("$randomString()")
+                ? randomString()
+                : variables.getOrDefault(match.group(1), ""));
+    }
+
+    private String json(Object body, Map<String, String> variables) {
+        try {
+            return this.mapper.writeValueAsString(this.fillAll(body, variables));
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private Object fillAll(Object value, Map<String, String> variables) {
+        if (value instanceof String text) return this.fill(text, variables);
+        if (value instanceof Map<?, ?> map) {
+            var filled = new LinkedHashMap<Object, Object>();
+            map.forEach((key, inner) -> filled.put(key, this.fillAll(inner, variables)));
+            return filled;
+        }
+        if (value instanceof List<?> list) {
+            var filled = new ArrayList<>();
+            list.forEach(inner -> filled.add(this.fillAll(inner, variables)));
+            return filled;
+        }
+        return value;
+    }
+
+    // $.field of the response body
+    private String capture(String body, String path) {
+        try {
+            return this.mapper.readTree(body).path(path.substring(2)).asText();
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    private static String randomString() {
+        var random = ThreadLocalRandom.current();
+        var text = new StringBuilder(10);
+        for (var i = 0; i < 10; i++) text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        return text.toString();
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        var index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,157 @@
+package com.shop.product.service;
+
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.AWSXRayRecorderBuilder;
+import com.amazonaws.xray.emitters.Emitter;
+import com.amazonaws.xray.entities.Segment;
+import com.amazonaws.xray.entities.Subsegment;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.product.codec.EventEncoder;
+import com.shop.product.dto.EventType;
+import com.shop.product.dto.ProductEventDto;
+import com.shop.product.dto.ProductFailureEventDto;
+import com.shop.product.model.OutboxEvent;
+import com.shop.product.model.Product;
+import org.apache.logging.log4j.ThreadContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.sns.SnsAsyncClient;
+import software.amazon.awssdk.services.sns.model.PublishBatchRequest;
+import software.amazon.awssdk.services.sns.model.PublishBatchResponse;
+import software.amazon.awssdk.services.sns.model.PublishRequest;
+import software.amazon.awssdk.services.sns.model.PublishResponse;
+import software.amazon.awssdk.services.sns.model.Topic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Cost of building the SNS requests, payload, message attributes and request objects
+// The client completes right away so nothing of the network is measured
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class SnsPublisherBenchmark {
+    private static final PublishResponse PUBLISHED = PublishResponse.builder().messageId("message").build();
+    private static final PublishBatchResponse BATCH_PUBLISHED = PublishBatchResponse.builder().build();
+
+    @Param({"json", "binary"}) // aws.sns.event.encoding
+    private String encoding;
+
+    private SnsPublisher publisher;
+    private Product product;
+    private List<OutboxEvent> events; // A PublishBatch of the relay
+    private ProductFailureEventDto failure;
+
+    @Setup
+    public void setup() {
+        AWSXRay.setGlobalRecorder(AWSXRayRecorderBuilder.standard()
+                .withEmitter(new Emitter() {
+                    @Override
+                    public boolean sendSegment(Segment segment) {
+                        return true;
+                    }
+
+                    @Override
+                    public boolean sendSubsegment(Subsegment subsegment) {
+                        return true;
+                    }
+                })
+                .build());
+        var client = new SnsAsyncClient() {
+            @Override
+            public CompletableFuture<PublishResponse> publish(PublishRequest request) {
+                return CompletableFuture.completedFuture(PUBLISHED);
+            }
+
+            @Override
+            public CompletableFuture<PublishBatchResponse> publishBatch(PublishBatchRequest request) {
+                return CompletableFuture.completedFuture(BATCH_PUBLISHED);
+            }
+
+            @Override
+            public String serviceName() {
+                return "sns";
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        var topic = Topic.builder().topicArn("arn:aws:sns:us-east-1:000000000000:shop-sns-product-events").build();
+        var encoder = new EventEncoder(new ObjectMapper(), this.encoding);
+        this.publisher = new SnsPublisher(encoder, client, topic, false, 10);
+        this.events = new ArrayList<>();
+        for (var i = 0; i < 10; i++) {
+            var product = new Product();
+            product.setId(UUID.randomUUID().toString());
+            product.setCode("SKU-4711-BLUE-" + i);
+            product.setPrice(129.99f);
+            if (i == 0) this.product = product;
+            var event = new OutboxEvent();
+            event.setShard("events#0");
+            event.setId("%013d#%s".formatted(System.currentTimeMillis(), UUID.randomUUID()));
+            event.setProductId(product.getId());
+            event.setEventType(EventType.PRODUCT_CREATED.name());
+            event.setMessage(encode(encoder, product));
+            event.setContentType(encoder.contentType());
+            event.setRequestId(UUID.randomUUID().toString());
+            this.events.add(event);
+        }
+        this.failure = new ProductFailureEventDto(404, "Product not found", "xrmeng720@gmail.com", this.product.getId(), 1);
+    }
+
+    // What the interceptor and the X-Ray filter set on a request thread
+    @Setup(Level.Iteration)
+    public void begin() {
+        ThreadContext.put("requestId", UUID.randomUUID().toString());
+        AWSXRay.beginSegment("benchmark");
+    }
+
+    @TearDown(Level.Iteration)
+    public void end() {
+        AWSXRay.endSegment();
+        ThreadContext.clearAll();
+    }
+
+    @Benchmark
+    public PublishResponse publish() {
+        return this.publisher.publish(this.product, EventType.PRODUCT_CREATED, "xrmeng720@gmail.com").join();
+    }
+
+    @Benchmark
+    public Map<String, String> relay() {
+        return this.publisher.relay(this.events).join();
+    }
+
+    @Benchmark
+    public PublishResponse publishFailure() {
+        return this.publisher.publishFailure(this.failure, "request", "trace").join();
+    }
+
+    private static String encode(EventEncoder encoder, Product product) {
+        try {
+            return encoder.encode(new ProductEventDto(product.getId(), product.getCode(), product.getPrice(), "xrmeng720@gmail.com"));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package com.shop.product;
 
+import com.shop.product.config.NativeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableAspectJAutoProxy
+@EnableScheduling // Outbox relay
+@ImportRuntimeHints(NativeHints.class) // ./gradlew nativeCompile
 public class ProductApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,352 @@
+package com.shop.product.cache;
+
+import com.shop.product.model.Product;
+import jakarta.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// All products in one file, sorted by id in deflated blocks of BLOCK_SIZE products
+// [block]... [index: first id, offset, length and inflated length of every block] [footer]
+// The file is copied to java.io.tmpdir and the copy memory-mapped, a lookup binary searches the index
+// and inflates one block, a mapping of the shared file would fault once another task replaces it
+final class CatalogSnapshot {
+    private static final int MAGIC = 0x50435331; // PCS1
+    private static final int FOOTER = Long.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES;
+    private static final int BLOCK_SIZE = 64;
+    private static final int RUN_SIZE = BLOCK_SIZE * 64; // Products sorted in memory at once by the Writer
+
+    private final ByteBuffer file;
+    private final long createdAt;
+    private final int count;
+    private final String[] first;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int[] inflated;
+
+    private CatalogSnapshot(ByteBuffer file) throws IOException {
+        this.file = file;
+        var footer = file.limit() - FOOTER;
+        if (footer < 0 || file.getInt(footer + FOOTER - Integer.BYTES) != MAGIC)
+            throw new IOException("Not a catalog snapshot");
+        var index = file.getLong(footer);
+        this.createdAt = file.getLong(footer + Long.BYTES);
+        this.count = file.getInt(footer + Long.BYTES + Long.BYTES);
+        var in = new DataInputStream(new ByteArrayInputStream(bytes(file, index, (int) (footer - index))));
+        var blocks = in.readInt();
+        this.first = new String[blocks];
+        this.offsets = new long[blocks];
+        this.lengths = new int[blocks];
+        this.inflated = new int[blocks];
+        for (var i = 0; i < blocks; i++) {
+            this.first[i] = in.readUTF();
+            this.offsets[i] = in.readLong();
+            this.lengths[i] = in.readInt();
+            this.inflated[i] = in.readInt();
+        }
+    }
+
+    static CatalogSnapshot open(Path path) throws IOException {
+        var copy = Files.createTempFile("product-catalog", ".snapshot");
+        try {
+            Files.copy(path, copy, StandardCopyOption.REPLACE_EXISTING);
+            try (var channel = FileChannel.open(copy, StandardOpenOption.READ)) {
+                return new CatalogSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())); // Stays mapped once closed
+            }
+        } finally {
+            Files.deleteIfExists(copy); // The mapping keeps the local copy until it is collected
+        }
+    }
+
+    static void write(Path path, long createdAt, List<Product> products) throws IOException {
+        try (var writer = new Writer(path, createdAt)) {
+            writer.add(products);
+            writer.commit();
+        }
+    }
+
+    // When the scan it was written from started
+    long createdAt() {
+        return this.createdAt;
+    }
+
+    int count() {
+        return this.count;
+    }
+
+    long bytes() {
+        return this.file.limit();
+    }
+
+    @Nullable
+    Product get(String id) {
+        var block = Arrays.binarySearch(this.first, id);
+        if (block < 0) block = -block - 2; // The block starting before the id
+        if (block < 0) return null;
+        for (var product : this.block(block))
+            if (product.getId().equals(id)) return product;
+        return null;
+    }
+
+    // The first limit products by id
+    void forEach(int limit, Consumer<Product> consumer) {
+        var left = limit;
+        for (var block = 0; block < this.first.length && left > 0; block++)
+            for (var product : this.block(block)) {
+                if (left-- == 0) return;
+                consumer.accept(product);
+            }
+    }
+
+    private List<Product> block(int block) {
+        var inflater = new Inflater();
+        try {
+            inflater.setInput(this.file.slice(Math.toIntExact(this.offsets[block]), this.lengths[block]));
+            var raw = new byte[this.inflated[block]];
+            if (inflater.inflate(raw) != raw.length) throw new IOException("Truncated block " + block);
+            return decode(raw);
+        } catch (IOException | DataFormatException | InternalError e) { // InternalError for a fault of the mapping
+            throw new UncheckedIOException(e instanceof IOException io ? io : new IOException(e));
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] encode(List<Product> products) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        out.writeInt(products.size());
+        for (var product : products) {
+            out.writeUTF(product.getId());
+            writeNullable(out, product.getCode());
+            writeNullable(out, product.getProductName());
+            writeNullable(out, product.getProductUrl());
+            writeNullable(out, product.getModel());
+            out.writeFloat(product.getPrice());
+            out.writeLong(product.getVersion() == null ? -1 : product.getVersion());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<Product> decode(byte[] raw) throws IOException {
+        var in = new DataInputStream(new ByteArrayInputStream(raw));
+        var size = in.readInt();
+        var products = new ArrayList<Product>(size);
+        for (var i = 0; i < size; i++) {
+            var product = new Product();
+            product.setId(in.readUTF());
+            product.setCode(readNullable(in));
+            product.setProductName(readNullable(in));
+            product.setProductUrl(readNullable(in));
+            product.setModel(readNullable(in));
+            product.setPrice(in.readFloat());
+            var version = in.readLong();
+            product.setVersion(version < 0 ? null : version);
+            products.add(product);
+        }
+        return products;
+    }
+
+    private static void writeNullable(DataOutputStream out, @Nullable String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    @Nullable
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static byte[] inflate(byte[] compressed, int length) throws IOException {
+        var inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            var raw = new byte[length];
+            if (inflater.inflate(raw) != raw.length) throw new IOException("Truncated block");
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        var out = new ByteArrayOutputStream(raw.length / 2);
+        var buffer = new byte[8192];
+        while (!deflater.finished()) out.write(buffer, 0, deflater.deflate(buffer));
+        return out.toByteArray();
+    }
+
+    private static byte[] bytes(ByteBuffer file, long offset, int length) {
+        var bytes = new byte[length];
+        file.get(Math.toIntExact(offset), bytes);
+        return bytes;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    private static byte[] readFully(FileChannel channel, long position, int length) throws IOException {
+        var buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining())
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new IOException("Truncated run");
+        return buffer.array();
+    }
+
+    // Takes the products a page at a time, in any order, so a scan never holds the whole catalog
+    // Every RUN_SIZE products are sorted and spilled as a run of blocks to a file in java.io.tmpdir,
+    // commit merges the runs into the snapshot with one block of every run in memory
+    // Written next to the path and moved over it, readers of the previous file are not affected
+    static final class Writer implements Closeable {
+        private final Path path;
+        private final long createdAt;
+        private final Path spill;
+        private final FileChannel runs;
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final List<Product> run = new ArrayList<>(RUN_SIZE);
+        private final List<List<Block>> spilled = new ArrayList<>();
+        private int count;
+
+        Writer(Path path, long createdAt) throws IOException {
+            this.path = path;
+            this.createdAt = createdAt;
+            this.spill = Files.createTempFile("product-catalog", ".runs");
+            this.runs = FileChannel.open(this.spill, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        void add(List<Product> products) throws IOException {
+            for (var product : products) {
+                this.run.add(product);
+                if (this.run.size() == RUN_SIZE) this.spill();
+            }
+            this.count += products.size();
+        }
+
+        int count() {
+            return this.count;
+        }
+
+        void commit() throws IOException {
+            this.spill();
+            var cursors = new PriorityQueue<Cursor>(Comparator.comparing(Cursor::id));
+            for (var blocks : this.spilled) {
+                var cursor = new Cursor(blocks);
+                if (cursor.next(this.runs)) cursors.add(cursor);
+            }
+            var temporary = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+            try (var channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                var index = new ByteArrayOutputStream();
+                var entries = new DataOutputStream(index);
+                entries.writeInt((this.count + BLOCK_SIZE - 1) / BLOCK_SIZE);
+                var block = new ArrayList<Product>(BLOCK_SIZE);
+                while (!cursors.isEmpty()) {
+                    var cursor = cursors.poll();
+                    block.add(cursor.product());
+                    if (cursor.next(this.runs)) cursors.add(cursor);
+                    if (block.size() == BLOCK_SIZE || cursors.isEmpty()) {
+                        var raw = encode(block);
+                        var compressed = deflate(this.deflater, raw);
+                        entries.writeUTF(block.getFirst().getId());
+                        entries.writeLong(channel.position());
+                        entries.writeInt(compressed.length);
+                        entries.writeInt(raw.length);
+                        writeFully(channel, ByteBuffer.wrap(compressed));
+                        block.clear();
+                    }
+                }
+                var footer = ByteBuffer.allocate(FOOTER)
+                        .putLong(channel.position())
+                        .putLong(this.createdAt)
+                        .putInt(this.count)
+                        .putInt(MAGIC)
+                        .flip();
+                writeFully(channel, ByteBuffer.wrap(index.toByteArray()));
+                writeFully(channel, footer);
+                channel.force(true);
+            }
+            Files.move(temporary, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.deflater.end();
+            try {
+                this.runs.close();
+            } finally {
+                Files.deleteIfExists(this.spill);
+            }
+        }
+
+        private void spill() throws IOException {
+            if (this.run.isEmpty()) return;
+            this.run.sort(Comparator.comparing(Product::getId));
+            var blocks = new ArrayList<Block>();
+            for (var i = 0; i < this.run.size(); i += BLOCK_SIZE) {
+                var raw = encode(this.run.subList(i, Math.min(i + BLOCK_SIZE, this.run.size())));
+                var compressed = deflate(this.deflater, raw);
+                blocks.add(new Block(this.runs.size(), compressed.length, raw.length));
+                this.runs.position(this.runs.size());
+                writeFully(this.runs, ByteBuffer.wrap(compressed));
+            }
+            this.spilled.add(blocks);
+            this.run.clear();
+        }
+    }
+
+    private record Block(long offset, int length, int inflated) {
+    }
+
+    // Next product of a spilled run, its current block inflated
+    private static final class Cursor {
+        private final List<Block> blocks;
+        private int block;
+        private List<Product> products = List.of();
+        private int position = -1;
+
+        Cursor(List<Block> blocks) {
+            this.blocks = blocks;
+        }
+
+        boolean next(FileChannel runs) throws IOException {
+            if (++this.position < this.products.size()) return true;
+            if (this.block == this.blocks.size()) return false;
+            var block = this.blocks.get(this.block++);
+            this.products = decode(inflate(readFully(runs, block.offset(), block.length()), block.inflated()));
+            this.position = 0;
+            return !this.products.isEmpty();
+        }
+
+        Product product() {
+            return this.products.get(this.position);
+        }
+
+        String id() {
+            return this.product().getId();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.shop.product.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.shop.product.event.ProductChangedEvent;
+import com.shop.product.model.Product;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+// Read-through cache in front of ProductRepository.getById
+// Entries are bounded by size and age, writes update or evict them through ProductChangedEvent
+// Other tasks behind the load balancer only see a change once the entry expires
+@Component
+public class ProductCache {
+    private final Cache<String, Product> cache;
+    private final Policy.VarExpiration<String, Product> expiry;
+    private final Duration ttl;
+    // Writes of an id since a table read started keep the read out of the cache
+    private final WriteStamps writes = new WriteStamps();
+
+    public ProductCache(
+            MeterRegistry registry,
+            @Value("${product.cache.size}") long size,
+            @Value("${product.cache.ttl.seconds}") long ttl) {
+        this.ttl = Duration.ofSeconds(ttl);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(size)
+                .expireAfter(afterWrite(this.ttl.toNanos())) // Copies older than their read are put with less
+                .recordStats() // Hits, misses and evictions in /actuator/metrics/cache.*
+                .build();
+        this.expiry = this.cache.policy().expireVariably().orElseThrow();
+        CaffeineCacheMetrics.monitor(registry, this.cache, "products");
+    }
+
+    @Nullable
+    public Product get(String id) {
+        return this.cache.getIfPresent(id);
+    }
+
+    // To take before reading the table
+    public long stamp() {
+        return this.writes.stamp();
+    }
+
+    // Changes with every write of the id, reads of the same version can share a table read
+    public long version(String id) {
+        return this.writes.version(id);
+    }
+
+    // Caches a table read unless the product was written since the stamp was taken
+    public void fill(Product product, long stamp) {
+        var id = product.getId();
+        if (!this.writes.unchanged(id, stamp)) return;
+        this.cache.put(id, product);
+        // A write landed between the check and the put
+        if (!this.writes.unchanged(id, stamp)) this.cache.invalidate(id);
+    }
+
+    // A copy read age ago, e.g. from the catalog snapshot, is cached for what is left of the TTL only
+    public void fill(Product product, long stamp, Duration age) {
+        var left = this.ttl.minus(age);
+        if (left.isNegative() || left.isZero()) return;
+        var id = product.getId();
+        if (!this.writes.unchanged(id, stamp)) return;
+        this.expiry.put(id, product, left);
+        if (!this.writes.unchanged(id, stamp)) this.cache.invalidate(id);
+    }
+
+    @EventListener
+    public void on(ProductChangedEvent event) {
+        var product = event.product();
+        this.writes.written(product.getId());
+        switch (event.type()) {
+            case PRODUCT_CREATED, PRODUCT_UPDATED -> this.cache.put(product.getId(), product);
+            case PRODUCT_DELETED -> this.cache.invalidate(product.getId());
+            default -> { }
+        }
+    }
+
+    // Same as expireAfterWrite, with room for entries put with a shorter one
+    private static Expiry<String, Product> afterWrite(long nanos) {
+        return new Expiry<>() {
+            @Override
+            public long expireAfterCreate(String id, Product product, long now) {
+                return nanos;
+            }
+
+            @Override
+            public long expireAfterUpdate(String id, Product product, long now, long current) {
+                return nanos;
+            }
+
+            @Override
+            public long expireAfterRead(String id, Product product, long now, long current) {
+                return current;
+            }
+        };
+    }
+}
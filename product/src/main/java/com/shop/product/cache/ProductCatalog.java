@@ -0,0 +1,265 @@
+package com.shop.product.cache;
+
+import com.shop.product.event.ProductChangedEvent;
+import com.shop.product.model.Product;
+import com.shop.product.repository.ProductOutbox;
+import com.shop.product.repository.ProductScanner;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Nullable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+// Local copy of the whole catalog in a memory-mapped snapshot file, see CatalogSnapshot
+// A new task loads it at startup and warms the product cache from it before reporting healthy,
+// entries only get what is left of the cache TTL after the age of the snapshot
+// The file is rewritten from a scan every product.snapshot.refresh.ms by one task at a time,
+// the others pick it up, so on a shared volume a scan serves every task, the id filter is built from it too
+// Reads are served from it up to product.snapshot.max.staleness.seconds after its scan started,
+// never for products written since, which are read from the table
+// Writes of this task are known from its events, those of the others from the outbox change log,
+// polled every product.snapshot.changes.poll.ms, reads stop while the polls fall behind
+@Component
+public class ProductCatalog implements ApplicationRunner, HealthIndicator {
+    private static final Logger LOG = LogManager.getLogger(ProductCatalog.class);
+    private static final long SKEW = Duration.ofSeconds(30).toMillis(); // Between the clocks of the tasks
+    private final ProductScanner scanner;
+    private final ProductOutbox outbox;
+    private final ProductCache cache;
+    private final ProductIdFilter ids;
+    private final boolean enabled;
+    private final Path path;
+    private final long refresh;
+    private final long staleness;
+    private final int warm;
+    private final int segments;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final Map<String, Long> changed = new ConcurrentHashMap<>(); // id -> when it was last written
+    private volatile CatalogSnapshot snapshot;
+    private volatile long polled; // When the last poll of the change log that went through started
+    private volatile boolean warmed;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter stale;
+
+    public ProductCatalog(
+            ProductScanner scanner,
+            ProductOutbox outbox,
+            ProductCache cache,
+            ProductIdFilter ids,
+            MeterRegistry registry,
+            @Value("${product.snapshot.enabled}") boolean enabled,
+            @Value("${product.snapshot.path}") String path,
+            @Value("${product.snapshot.refresh.ms}") long refresh,
+            @Value("${product.snapshot.max.staleness.seconds}") long staleness,
+            @Value("${product.snapshot.warm.max}") int warm,
+            @Value("${product.scan.segments}") int segments) {
+        this.scanner = scanner;
+        this.outbox = outbox;
+        this.cache = cache;
+        this.ids = ids;
+        this.enabled = enabled;
+        this.path = Path.of(path);
+        this.refresh = refresh;
+        this.staleness = Duration.ofSeconds(staleness).toMillis();
+        this.warm = warm;
+        this.segments = segments;
+        this.hits = registry.counter("product.snapshot.reads", "result", "hit");
+        this.misses = registry.counter("product.snapshot.reads", "result", "miss");
+        this.stale = registry.counter("product.snapshot.reads", "result", "stale");
+        Gauge.builder("product.snapshot.age", this, catalog -> catalog.snapshot == null
+                        ? 0
+                        : (System.currentTimeMillis() - catalog.snapshot.createdAt()) / 1000.0)
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("product.snapshot.items", this, catalog -> catalog.snapshot == null ? 0 : catalog.snapshot.count())
+                .register(registry);
+        Gauge.builder("product.snapshot.bytes", this, catalog -> catalog.snapshot == null ? 0 : catalog.snapshot.bytes())
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    // Null when the snapshot cannot tell, the product is then read from the table
+    @Nullable
+    public Product get(String id) {
+        var snapshot = this.snapshot;
+        if (snapshot == null || this.changed.containsKey(id)) return null;
+        var now = System.currentTimeMillis();
+        if (now - snapshot.createdAt() > this.staleness || now - this.polled > this.staleness) {
+            this.stale.increment();
+            return null;
+        }
+        Product product;
+        try {
+            product = snapshot.get(id);
+        } catch (UncheckedIOException e) {
+            LOG.error("Catalog snapshot - block of {} not read", id, e);
+            product = null;
+        }
+        if (product == null) this.misses.increment(); // Created since, or does not exist
+        else this.hits.increment();
+        return product;
+    }
+
+    // Startup, before the task reports healthy
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            if (this.enabled && Files.exists(this.path)) {
+                this.load();
+                this.poll(); // Changes of the other tasks since the scan, before any of it is served
+                this.warm();
+            }
+        } catch (IOException | UncheckedIOException e) {
+            LOG.error("Catalog snapshot - {} - not loaded", this.path, e); // Reads go to the table
+        } finally {
+            this.warmed = true;
+        }
+    }
+
+    @Override
+    public Health health() {
+        if (!this.warmed) return Health.outOfService().build();
+        var snapshot = this.snapshot;
+        return snapshot == null
+                ? Health.up().build()
+                : Health.up()
+                        .withDetail("items", snapshot.count())
+                        .withDetail("ageSeconds", (System.currentTimeMillis() - snapshot.createdAt()) / 1000)
+                        .build();
+    }
+
+    // Runs on the scheduler thread, only starts the scan
+    @Scheduled(fixedDelayString = "${product.snapshot.refresh.ms}")
+    public void refresh() {
+        if (!this.enabled || !this.refreshing.compareAndSet(false, true)) return;
+        FileChannel lock = null;
+        try {
+            if (Files.exists(this.path)) this.load(); // Written by another task
+            var snapshot = this.snapshot;
+            if (snapshot != null && System.currentTimeMillis() - snapshot.createdAt() < this.refresh) {
+                this.refreshing.set(false);
+                return;
+            }
+            Files.createDirectories(this.path.toAbsolutePath().getParent());
+            lock = FileChannel.open(this.path.resolveSibling(this.path.getFileName() + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (lock.tryLock() == null) { // Another task is writing it
+                lock.close();
+                this.refreshing.set(false);
+                return;
+            }
+        } catch (IOException | UncheckedIOException e) {
+            LOG.error("Catalog snapshot - {} - refresh failed", this.path, e);
+            this.release(lock);
+            return;
+        }
+        var held = lock;
+        var createdAt = System.currentTimeMillis(); // Writes before the scan started are in it
+        CatalogSnapshot.Writer writer;
+        try {
+            writer = new CatalogSnapshot.Writer(this.path, createdAt);
+        } catch (IOException e) {
+            LOG.error("Catalog snapshot - {} - refresh failed", this.path, e);
+            this.release(held);
+            return;
+        }
+        this.scanner.scan(this.segments, page -> {
+            try {
+                writer.add(page); // Pages go to the writer as they come, the catalog is never held at once
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).whenComplete((ignored, e) -> {
+            try (writer) {
+                if (e != null) throw e;
+                writer.commit();
+                LOG.info("Catalog snapshot - {} products written", writer.count());
+                this.load();
+            } catch (Throwable failure) {
+                LOG.error("Catalog snapshot - {} - refresh failed", this.path, failure);
+            } finally {
+                this.release(held);
+            }
+        });
+    }
+
+    // Ids updated or deleted by any task since the last poll, minus the skew
+    @Scheduled(fixedDelayString = "${product.snapshot.changes.poll.ms}")
+    public void poll() {
+        var snapshot = this.snapshot;
+        if (!this.enabled || snapshot == null) return;
+        var started = System.currentTimeMillis();
+        var since = Math.min(snapshot.createdAt(), this.polled == 0 ? started : this.polled) - SKEW;
+        var polls = IntStream.range(0, this.outbox.shards())
+                .mapToObj(shard -> this.outbox.changes(shard, since))
+                .toList();
+        try {
+            CompletableFuture.allOf(polls.toArray(CompletableFuture[]::new)).join();
+        } catch (Exception e) {
+            LOG.error("Catalog snapshot - changes not polled", e); // Reads stop once the last poll is too old
+            return;
+        }
+        polls.forEach(poll -> poll.join().forEach((id, at) -> this.changed.merge(id, at, Math::max)));
+        this.polled = started;
+    }
+
+    @EventListener
+    public void on(ProductChangedEvent event) {
+        if (this.enabled) this.changed.merge(event.product().getId(), System.currentTimeMillis(), Math::max);
+    }
+
+    // Maps the file unless the one already loaded is as recent
+    private synchronized void load() throws IOException {
+        var loaded = CatalogSnapshot.open(this.path);
+        var current = this.snapshot;
+        if (current != null && current.createdAt() >= loaded.createdAt()) return;
+        this.snapshot = loaded;
+        this.changed.values().removeIf(writtenAt -> writtenAt < loaded.createdAt() - SKEW); // In the snapshot
+        this.ids.build(loaded);
+        LOG.info("Catalog snapshot - {} products, {} seconds old", loaded.count(), (System.currentTimeMillis() - loaded.createdAt()) / 1000);
+    }
+
+    // The code cache is left cold, lookups by code read the reservation, see ProductRepository.getByCode
+    private void warm() {
+        var snapshot = this.snapshot;
+        if (snapshot == null || this.polled == 0) return;
+        var age = Duration.ofMillis(System.currentTimeMillis() - snapshot.createdAt());
+        if (age.toMillis() > this.staleness) return;
+        var stamp = this.cache.stamp();
+        snapshot.forEach(this.warm, product -> {
+            if (!this.changed.containsKey(product.getId())) this.cache.fill(product, stamp, age);
+        });
+    }
+
+    private void release(@Nullable FileChannel lock) {
+        try {
+            if (lock != null) lock.close(); // Releases the lock
+        } catch (IOException e) {
+            LOG.error("Catalog snapshot - lock not released", e);
+        } finally {
+            this.refreshing.set(false);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.shop.product.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.shop.product.event.ProductChangedEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+// Code to id lookups against the IndexOnCode GSI
+// An empty value records that the code does not exist, kept for a shorter time
+// since another task can create the code without this one being notified
+@Component
+public class ProductCodeCache {
+    private final Cache<String, Optional<String>> cache;
+    private final WriteStamps writes = new WriteStamps(); // By code
+
+    public ProductCodeCache(
+            MeterRegistry registry,
+            @Value("${product.cache.code.size}") long size,
+            @Value("${product.cache.code.ttl.seconds}") long ttl,
+            @Value("${product.cache.code.negative.ttl.seconds}") long negativeTtl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(size)
+                .expireAfter(new CodeExpiry(Duration.ofSeconds(ttl).toNanos(), Duration.ofSeconds(negativeTtl).toNanos()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, this.cache, "product-codes");
+    }
+
+    // Null when the code has not been looked up, empty when it is known not to exist
+    @Nullable
+    public Optional<String> get(String code) {
+        return this.cache.getIfPresent(code);
+    }
+
+    // To take before reading the table
+    public long stamp() {
+        return this.writes.stamp();
+    }
+
+    // Changes with every write of a product with the code
+    public long version(String code) {
+        return this.writes.version(code);
+    }
+
+    // Caches a table read unless a product with the code was written since the stamp was taken
+    public void fill(String code, @Nullable String id, long stamp) {
+        if (!this.writes.unchanged(code, stamp)) return;
+        this.cache.put(code, Optional.ofNullable(id));
+        if (!this.writes.unchanged(code, stamp)) this.cache.invalidate(code);
+    }
+
+    @EventListener
+    public void on(ProductChangedEvent event) {
+        var product = event.product();
+        this.writes.written(product.getCode());
+        var previous = event.previousCode();
+        if (previous != null && !previous.equals(product.getCode())) { // Released by the write
+            this.writes.written(previous);
+            this.cache.invalidate(previous);
+        }
+        switch (event.type()) {
+            case PRODUCT_CREATED, PRODUCT_UPDATED -> this.cache.put(product.getCode(), Optional.of(product.getId()));
+            case PRODUCT_DELETED -> this.cache.invalidate(product.getCode());
+            default -> { }
+        }
+    }
+
+    private record CodeExpiry(long ttl, long negativeTtl) implements Expiry<String, Optional<String>> {
+        @Override
+        public long expireAfterCreate(String code, Optional<String> id, long currentTime) {
+            return id.isPresent() ? this.ttl : this.negativeTtl;
+        }
+
+        @Override
+        public long expireAfterUpdate(String code, Optional<String> id, long currentTime, long currentDuration) {
+            return this.expireAfterCreate(code, id, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String code, Optional<String> id, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
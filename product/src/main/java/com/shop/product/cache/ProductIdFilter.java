@@ -0,0 +1,161 @@
+package com.shop.product.cache;
+
+import com.shop.product.dto.EventType;
+import com.shop.product.event.ProductChangedEvent;
+import com.shop.product.repository.ProductIds;
+import com.shop.product.repository.ProductScanner;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ToDoubleFunction;
+
+// Ids of all products in a Bloom filter, so lookups of ids that do not exist skip DynamoDB
+// Built from every catalog snapshot ProductCatalog loads, or from a scan of its own every
+// product.idfilter.refresh.ms when snapshots are disabled, creates of this task are added as they commit
+// Ids that are not UUIDs are never looked up
+// Other tasks' creates are only in the next snapshot or scan, so an id missing from the filter is known
+// not to exist only if it was created before the scan started, read from the time-ordered id
+// Ids that are not time-ordered carry no creation time, their misses are unknown
+// unless the scan started after product.idfilter.v7.cutover.ms, from when every task creates time-ordered ids
+// Deleted ids stay in the filter until the next snapshot or scan, lookups of them go to the table
+// product.idfilter.{items, bytes, fpp} and product.idfilter.lookups{result=absent|present|unknown}
+@Component
+public class ProductIdFilter {
+    private static final Logger LOG = LogManager.getLogger(ProductIdFilter.class);
+    private final ProductScanner scanner;
+    private final boolean enabled;
+    private final boolean snapshots; // Built from the catalog snapshots rather than scans of its own
+    private final int segments;
+    private final long capacity;
+    private final double fpp;
+    private final long maxBytes;
+    private final long skew;
+    private final long cutover; // Once every task runs the deployment that creates time-ordered ids, 0 before
+    private final AtomicBoolean scanning = new AtomicBoolean();
+    private volatile Snapshot current; // Null until the first catalog snapshot is loaded or scan is done
+    private final Counter absent;
+    private final Counter present;
+    private final Counter unknown;
+
+    public ProductIdFilter(
+            ProductScanner scanner,
+            MeterRegistry registry,
+            @Value("${product.idfilter.enabled}") boolean enabled,
+            @Value("${product.snapshot.enabled}") boolean snapshots,
+            @Value("${product.scan.segments}") int segments,
+            @Value("${product.idfilter.initial.capacity}") long capacity,
+            @Value("${product.idfilter.fpp}") double fpp,
+            @Value("${product.idfilter.max.mb}") long maxMb,
+            @Value("${product.idfilter.clock.skew.ms}") long skew,
+            @Value("${product.idfilter.v7.cutover.ms}") long cutover) {
+        this.scanner = scanner;
+        this.enabled = enabled;
+        this.snapshots = snapshots;
+        this.segments = segments;
+        this.capacity = capacity;
+        this.fpp = fpp;
+        this.maxBytes = maxMb * 1024 * 1024;
+        this.skew = skew;
+        this.cutover = cutover;
+        this.absent = registry.counter("product.idfilter.lookups", "result", "absent");
+        this.present = registry.counter("product.idfilter.lookups", "result", "present");
+        this.unknown = registry.counter("product.idfilter.lookups", "result", "unknown"); // Not built yet or created since
+        Gauge.builder("product.idfilter.items", this, filter -> filter.measure(ScalableBloomFilter::count))
+                .register(registry);
+        Gauge.builder("product.idfilter.bytes", this, filter -> filter.measure(ScalableBloomFilter::bytes))
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("product.idfilter.fpp", this, filter -> filter.measure(ScalableBloomFilter::fpp))
+                .register(registry);
+    }
+
+    // True only when the product is known not to exist
+    public boolean absent(String id) {
+        if (!ProductIds.valid(id)) {
+            this.absent.increment();
+            return true;
+        }
+        var snapshot = this.current;
+        if (snapshot == null) {
+            this.unknown.increment();
+            return false;
+        }
+        if (snapshot.filter().mightContain(id)) {
+            this.present.increment();
+            return false;
+        }
+        var createdAt = ProductIds.createdAt(id);
+        var scanned = createdAt < 0 // Could have been created by another task since the scan otherwise
+                ? this.cutover > 0 && this.cutover < snapshot.since()
+                : createdAt < snapshot.since();
+        if (!scanned) {
+            this.unknown.increment();
+            return false;
+        }
+        this.absent.increment();
+        return true;
+    }
+
+    // Ids of a snapshot ProductCatalog just loaded, on its thread
+    void build(CatalogSnapshot catalog) {
+        if (!this.enabled) return;
+        var since = catalog.createdAt() - this.skew; // Ids created before were in the table for its scan to find
+        var filter = new ScalableBloomFilter(Math.max(this.capacity, catalog.count()), this.fpp, this.maxBytes);
+        var full = new AtomicBoolean();
+        catalog.forEach(Integer.MAX_VALUE, product -> {
+            if (!filter.add(product.getId())) full.set(true);
+        });
+        this.install(filter, since, full.get());
+    }
+
+    // Without snapshots, runs at startup and then on the scheduler thread, only starts the scan
+    // Pages go straight into the filter, the products are not kept
+    @Scheduled(fixedDelayString = "${product.idfilter.refresh.ms}")
+    public void scan() {
+        if (!this.enabled || this.snapshots || !this.scanning.compareAndSet(false, true)) return;
+        var since = System.currentTimeMillis() - this.skew;
+        var filter = new ScalableBloomFilter(this.capacity, this.fpp, this.maxBytes);
+        var full = new AtomicBoolean();
+        this.scanner.scan(this.segments, page -> page.forEach(product -> {
+            if (!filter.add(product.getId())) full.set(true);
+        })).whenComplete((ignored, e) -> {
+            if (e != null) LOG.error("Id filter - scan failed", e); // The previous one is kept
+            else this.install(filter, since, full.get());
+            this.scanning.set(false);
+        });
+    }
+
+    private void install(ScalableBloomFilter filter, long since, boolean full) {
+        if (full) {
+            LOG.error("Id filter - over {} bytes, disabled", this.maxBytes);
+            this.current = null;
+            return;
+        }
+        LOG.info("Id filter - {} ids, {} bytes", filter.count(), filter.bytes());
+        this.current = new Snapshot(filter, since);
+    }
+
+    @EventListener
+    public void on(ProductChangedEvent event) {
+        if (event.type() != EventType.PRODUCT_CREATED) return;
+        var id = event.product().getId();
+        var snapshot = this.current;
+        if (snapshot != null && !snapshot.filter().add(id)) this.current = null; // Over the memory bound
+    }
+
+    private double measure(ToDoubleFunction<ScalableBloomFilter> metric) {
+        var snapshot = this.current;
+        return snapshot == null ? 0 : metric.applyAsDouble(snapshot.filter());
+    }
+
+    private record Snapshot(ScalableBloomFilter filter, long since) {
+    }
+}
@@ -0,0 +1,68 @@
+package com.shop.product.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.shop.product.dto.ProductDto;
+import com.shop.product.event.ProductChangedEvent;
+import com.shop.product.model.Product;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+
+// ProductDto bodies already serialized, by product id and version
+// Repeated GET /products/{id} of an unchanged product skip Jackson, a new version replaces the entry
+@Component
+public class ProductJsonCache {
+    private final Cache<String, ProductJson> cache;
+    private final ObjectMapper mapper;
+
+    public ProductJsonCache(
+            MeterRegistry registry,
+            ObjectMapper mapper,
+            @Value("${product.cache.json.size}") long size) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(size)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, this.cache, "product-json");
+        this.mapper = mapper;
+    }
+
+    // Products written before versions existed count as version 0 until their next write
+    public ProductJson get(Product product) {
+        var version = product.getVersion() == null ? 0 : product.getVersion();
+        var cached = this.cache.getIfPresent(product.getId());
+        if (cached != null && cached.version() == version) return cached;
+        try {
+            var json = new ProductJson(version, "\"" + version + "\"", this.mapper.writeValueAsBytes(new ProductDto(product)));
+            this.cache.put(product.getId(), json);
+            return json;
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @EventListener
+    public void on(ProductChangedEvent event) {
+        this.cache.invalidate(event.product().getId());
+    }
+
+    public record ProductJson(long version, String etag, byte[] body) {
+        // If-None-Match: "3", W/"3", "2", "3" or *
+        public boolean matches(@Nullable String ifNoneMatch) {
+            if (ifNoneMatch == null) return false;
+            for (var tag : ifNoneMatch.split(",")) {
+                var trimmed = tag.trim();
+                if (trimmed.equals("*") || trimmed.replaceFirst("^W/", "").equals(this.etag)) return true;
+            }
+            return false;
+        }
+    }
+}
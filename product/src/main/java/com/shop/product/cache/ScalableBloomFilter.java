@@ -0,0 +1,129 @@
+package com.shop.product.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Bloom filter that grows with what is added to it (Almeida et al., Scalable Bloom Filters)
+// A full slice is followed by one twice as large with half the false positive rate,
+// the rates add up to at most the target however many slices there are
+// Adds and lookups can run concurrently, bits are only ever set
+final class ScalableBloomFilter {
+    private static final int GROWTH = 2;
+    private static final double TIGHTENING = 0.5;
+    private final List<Slice> slices = new CopyOnWriteArrayList<>();
+    private final long maxBytes;
+
+    ScalableBloomFilter(long capacity, double fpp, long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.slices.add(new Slice(capacity, fpp * (1 - TIGHTENING)));
+    }
+
+    // False once the next slice would not fit in maxBytes, the filter then misses ids and is not to be used
+    boolean add(String id) {
+        var hash = hash(id);
+        var slice = this.slices.getLast();
+        if (slice.contains(hash)) return true; // Keeps the count of a slice to distinct ids
+        slice.add(hash);
+        if (slice.count.get() < slice.capacity) return true;
+        synchronized (this) {
+            if (this.slices.getLast() != slice) return true;
+            var next = new Slice(slice.capacity * GROWTH, slice.fpp * TIGHTENING);
+            if (this.bytes() + next.bytes() > this.maxBytes) return false;
+            this.slices.add(next);
+            return true;
+        }
+    }
+
+    boolean mightContain(String id) {
+        var hash = hash(id);
+        for (var slice : this.slices)
+            if (slice.contains(hash)) return true;
+        return false;
+    }
+
+    long count() {
+        return this.slices.stream().mapToLong(slice -> slice.count.get()).sum();
+    }
+
+    long bytes() {
+        return this.slices.stream().mapToLong(Slice::bytes).sum();
+    }
+
+    // Expected rate for the ids added so far, below the target until the last slice is full
+    double fpp() {
+        var none = 1.0;
+        for (var slice : this.slices) none *= 1 - slice.expectedFpp();
+        return 1 - none;
+    }
+
+    // 64 bit FNV-1a over the UTF-8 bytes, then the murmur3 finalizer
+    private static long hash(String id) {
+        var hash = 0xcbf29ce484222325L;
+        for (var b : id.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    // k bit positions by double hashing the two halves of the hash (Kirsch and Mitzenmacher)
+    private static final class Slice {
+        private final long capacity;
+        private final double fpp;
+        private final long bits;
+        private final int hashes;
+        private final AtomicLongArray words;
+        private final AtomicLong count = new AtomicLong();
+
+        Slice(long capacity, double fpp) {
+            this.capacity = Math.max(1, capacity);
+            this.fpp = fpp;
+            var bits = (long) Math.ceil(-this.capacity * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+            this.words = new AtomicLongArray(Math.toIntExact((bits + 63) / 64));
+            this.bits = this.words.length() * 64L;
+            this.hashes = Math.max(1, (int) Math.round((double) this.bits / this.capacity * Math.log(2)));
+        }
+
+        void add(long hash) {
+            for (var i = 0; i < this.hashes; i++) {
+                var bit = this.bit(hash, i);
+                var word = (int) (bit >>> 6);
+                var mask = 1L << bit;
+                long current;
+                do {
+                    current = this.words.get(word);
+                    if ((current & mask) != 0) break;
+                } while (!this.words.compareAndSet(word, current, current | mask));
+            }
+            this.count.incrementAndGet();
+        }
+
+        boolean contains(long hash) {
+            for (var i = 0; i < this.hashes; i++) {
+                var bit = this.bit(hash, i);
+                if ((this.words.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        long bytes() {
+            return this.words.length() * 8L;
+        }
+
+        double expectedFpp() {
+            return Math.pow(1 - Math.exp(-(double) this.hashes * this.count.get() / this.bits), this.hashes);
+        }
+
+        private long bit(long hash, int i) {
+            return Long.remainderUnsigned(hash + i * ((hash >>> 32) | 1), this.bits);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.shop.product.cache;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Race guard of a read-through cache, per key
+// Every write takes the next number of a sequence, a read takes the current number before it starts
+// and may fill the cache only if its key was not written since
+// Keys written within the last minute are remembered, older ones only through the highest number forgotten
+final class WriteStamps {
+    private static final long HORIZON = Duration.ofMinutes(1).toNanos();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong forgotten = new AtomicLong(); // Highest number of a key no longer remembered
+    private final AtomicLong pruned = new AtomicLong(System.nanoTime());
+    private final Map<String, Written> written = new ConcurrentHashMap<>();
+
+    // To take before reading
+    long stamp() {
+        return this.sequence.get();
+    }
+
+    // Number of the last write of the key, changes with every write of it
+    long version(String key) {
+        var written = this.written.get(key);
+        return written != null ? written.sequence() : this.forgotten.get();
+    }
+
+    // False once the key was written after the stamp was taken
+    boolean unchanged(String key, long stamp) {
+        return this.version(key) <= stamp;
+    }
+
+    // Before the cache is updated with the write
+    void written(String key) {
+        var now = System.nanoTime();
+        this.written.put(key, new Written(this.sequence.incrementAndGet(), now));
+        var last = this.pruned.get();
+        if (now - last > HORIZON && this.pruned.compareAndSet(last, now)) this.prune(now);
+    }
+
+    private void prune(long now) {
+        this.written.forEach((key, written) -> {
+            if (now - written.at() <= HORIZON) return;
+            this.forgotten.accumulateAndGet(written.sequence(), Math::max); // Before it is gone, a read never misses it
+            this.written.remove(key, written);
+        });
+    }
+
+    private record Written(long sequence, long at) {
+    }
+}
@@ -0,0 +1,112 @@
+package com.shop.product.codec;
+
+import com.shop.product.dto.ProductEventDto;
+import com.shop.product.dto.ProductFailureEventDto;
+import jakarta.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Compact binary form of the product events, written and read field by field without reflection
+// Layout: version, kind, then the fields in declaration order
+// Fields are only ever appended, a reader skips the trailing ones it does not know
+// VERSION changes only when the layout of the existing fields does
+// Kept in sync with the decoder of the audit service
+public final class EventCodec {
+    public static final byte VERSION = 1;
+    private static final byte PRODUCT_EVENT = 1;
+    private static final byte FAILURE_EVENT = 2;
+
+    private EventCodec() {
+    }
+
+    public static byte[] encode(ProductEventDto dto) {
+        var out = new ByteArrayOutputStream(64);
+        out.write(VERSION);
+        out.write(PRODUCT_EVENT);
+        writeString(out, dto.id());
+        writeString(out, dto.code());
+        writeFloat(out, dto.price());
+        writeString(out, dto.email());
+        return out.toByteArray();
+    }
+
+    public static byte[] encode(ProductFailureEventDto dto) {
+        var out = new ByteArrayOutputStream(64);
+        out.write(VERSION);
+        out.write(FAILURE_EVENT);
+        writeVarInt(out, dto.status());
+        writeString(out, dto.error());
+        writeString(out, dto.email());
+        writeString(out, dto.id());
+        writeVarInt(out, dto.count());
+        return out.toByteArray();
+    }
+
+    public static ProductEventDto decodeProductEvent(byte[] bytes) {
+        var in = header(bytes, PRODUCT_EVENT);
+        return new ProductEventDto(readString(in), readString(in), in.getFloat(), readString(in));
+    }
+
+    public static ProductFailureEventDto decodeFailureEvent(byte[] bytes) {
+        var in = header(bytes, FAILURE_EVENT);
+        return new ProductFailureEventDto(readVarInt(in), readString(in), readString(in), readString(in), readVarInt(in));
+    }
+
+    private static ByteBuffer header(byte[] bytes, byte kind) {
+        var in = ByteBuffer.wrap(bytes);
+        var version = in.get();
+        if (version != VERSION) throw new IllegalArgumentException("Unsupported event version " + version);
+        var actual = in.get();
+        if (actual != kind) throw new IllegalArgumentException("Unexpected event kind " + actual);
+        return in;
+    }
+
+    // Length + 1 then the UTF-8 bytes, 0 is null
+    private static void writeString(ByteArrayOutputStream out, @Nullable String value) {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.writeBytes(bytes);
+    }
+
+    @Nullable
+    private static String readString(ByteBuffer in) {
+        var length = readVarInt(in) - 1;
+        if (length < 0) return null;
+        var value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static void writeFloat(ByteArrayOutputStream out, float value) {
+        var bits = Float.floatToIntBits(value);
+        out.write(bits >>> 24);
+        out.write(bits >>> 16);
+        out.write(bits >>> 8);
+        out.write(bits);
+    }
+
+    // 7 bits per byte, high bit set while more follow
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        var value = 0;
+        for (var shift = 0; shift < 32; shift += 7) {
+            var b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
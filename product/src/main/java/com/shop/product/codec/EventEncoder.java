@@ -0,0 +1,41 @@
+package com.shop.product.codec;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.product.dto.ProductEventDto;
+import com.shop.product.dto.ProductFailureEventDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Base64;
+
+// Message bodies of the published events, JSON or the binary codec in base64
+// SNS messages are text, consumers pick the decoder from the contentType attribute
+@Component
+public class EventEncoder {
+    public static final String JSON = "application/json";
+    public static final String BINARY = "application/x-shop-event"; // Base64 of EventCodec
+    private final ObjectMapper mapper;
+    private final boolean binary;
+
+    public EventEncoder(ObjectMapper mapper, @Value("${aws.sns.event.encoding}") String encoding) {
+        this.mapper = mapper;
+        this.binary = "binary".equals(encoding);
+    }
+
+    public String contentType() {
+        return this.binary ? BINARY : JSON;
+    }
+
+    public String encode(ProductEventDto dto) throws JsonProcessingException {
+        return this.binary
+                ? Base64.getEncoder().encodeToString(EventCodec.encode(dto))
+                : this.mapper.writeValueAsString(dto);
+    }
+
+    public String encode(ProductFailureEventDto dto) throws JsonProcessingException {
+        return this.binary
+                ? Base64.getEncoder().encodeToString(EventCodec.encode(dto))
+                : this.mapper.writeValueAsString(dto);
+    }
+}
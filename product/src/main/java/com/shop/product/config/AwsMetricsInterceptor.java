@@ -0,0 +1,126 @@
+package com.shop.product.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Latency histogram of every AWS call, unlike X-Ray it sees all requests
+// aws.calls{service, operation, resource, outcome}, e.g. DynamoDb GetItem products, Sns Publish shop-sns-product-events
+// aws.calls.retries and aws.calls.throttles count the attempts behind them
+// aws.dynamodb.capacity counts the consumed capacity units per table, of the requests that ask for it
+@Component
+public class AwsMetricsInterceptor implements ExecutionInterceptor {
+    private static final ExecutionAttribute<Long> START = new ExecutionAttribute<>("AwsMetricsStart");
+    private static final ExecutionAttribute<Integer> ATTEMPTS = new ExecutionAttribute<>("AwsMetricsAttempts");
+    private static final ExecutionAttribute<Integer> STATUS = new ExecutionAttribute<>("AwsMetricsStatus");
+    private final MeterRegistry registry;
+
+    public AwsMetricsInterceptor(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes attributes) {
+        attributes.putAttribute(START, System.nanoTime());
+        attributes.putAttribute(ATTEMPTS, 0);
+    }
+
+    // Called once per attempt, a retry follows the failed attempt
+    // The SDK only retries 400 and 429 responses on throttling, other 4xx are final
+    @Override
+    public void beforeTransmission(Context.BeforeTransmission context, ExecutionAttributes attributes) {
+        var attempts = attributes.getAttribute(ATTEMPTS);
+        if (attempts > 0) {
+            var tags = tags(context.request(), attributes);
+            this.registry.counter("aws.calls.retries", tags).increment();
+            var status = attributes.getAttribute(STATUS);
+            if (status != null && (status == 400 || status == 429)) this.registry.counter("aws.calls.throttles", tags).increment();
+        }
+        attributes.putAttribute(ATTEMPTS, attempts + 1);
+    }
+
+    @Override
+    public void afterTransmission(Context.AfterTransmission context, ExecutionAttributes attributes) {
+        attributes.putAttribute(STATUS, context.httpResponse().statusCode());
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes attributes) {
+        this.record(context.request(), attributes, "success");
+        context.response().getValueForField("ConsumedCapacity", Object.class).ifPresent(capacity -> {
+            if (capacity instanceof ConsumedCapacity single) this.capacity(single);
+            else if (capacity instanceof Collection<?> many) many.forEach(c -> this.capacity((ConsumedCapacity) c));
+        });
+    }
+
+    @Override
+    public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes attributes) {
+        var throttled = context.exception() instanceof AwsServiceException e && e.isThrottlingException();
+        if (throttled) this.registry.counter("aws.calls.throttles", tags(context.request(), attributes)).increment();
+        this.record(context.request(), attributes, throttled ? "throttled" : "error");
+    }
+
+    private void record(SdkRequest request, ExecutionAttributes attributes, String outcome) {
+        var start = attributes.getAttribute(START);
+        if (start == null) return; // Failed before the execution started
+        Timer.builder("aws.calls")
+                .tags(tags(request, attributes).and("outcome", outcome))
+                .publishPercentileHistogram()
+                .register(this.registry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void capacity(ConsumedCapacity capacity) {
+        if (capacity.capacityUnits() == null) return;
+        Counter.builder("aws.dynamodb.capacity")
+                .tag("resource", String.valueOf(capacity.tableName()))
+                .baseUnit("units")
+                .register(this.registry)
+                .increment(capacity.capacityUnits());
+    }
+
+    private static Tags tags(SdkRequest request, ExecutionAttributes attributes) {
+        return Tags.of(
+                "service", attributes.getAttribute(SdkExecutionAttribute.SERVICE_NAME),
+                "operation", attributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME),
+                "resource", resource(request));
+    }
+
+    // Table (and index), topic name or queue name of the call
+    private static String resource(SdkRequest request) {
+        var table = request.getValueForField("TableName", String.class);
+        if (table.isPresent()) {
+            return request.getValueForField("IndexName", String.class)
+                    .map(index -> table.get() + "/" + index)
+                    .orElse(table.get());
+        }
+        var topic = request.getValueForField("TopicArn", String.class);
+        if (topic.isPresent()) return topic.get().substring(topic.get().lastIndexOf(':') + 1);
+        var queue = request.getValueForField("QueueUrl", String.class);
+        if (queue.isPresent()) return queue.get().substring(queue.get().lastIndexOf('/') + 1);
+        var items = request.getValueForField("RequestItems", Map.class); // BatchGetItem, BatchWriteItem
+        if (items.isPresent()) {
+            Map<?, ?> tables = items.get();
+            return tables.keySet().stream()
+                    .map(String::valueOf)
+                    .sorted()
+                    .collect(Collectors.joining(","));
+        }
+        return "-"; // Transactions
+    }
+}
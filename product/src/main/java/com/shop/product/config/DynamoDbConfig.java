@@ -4,6 +4,7 @@ import com.amazonaws.xray.interceptors.TracingInterceptor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
@@ -11,18 +12,30 @@ import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 
 @Configuration
+@Profile("!inmemory") // InMemoryAwsConfig
 public class DynamoDbConfig {
 
     @Value("${aws.region}") // AWS_REGION in infra
     private String region;
 
+    private final AwsHttpClients http;
+    private final AwsMetricsInterceptor metrics;
+
+    public DynamoDbConfig(AwsHttpClients http, AwsMetricsInterceptor metrics) {
+        this.http = http;
+        this.metrics = metrics;
+    }
+
     @Bean
     public DynamoDbAsyncClient dynamoDbAsyncClient() {
         return DynamoDbAsyncClient.builder()
                 .credentialsProvider(DefaultCredentialsProvider.create())
                 .region(Region.of(region))
+                .httpClient(this.http.create("dynamodb")) // Own pool, aws.http.dynamodb.* settings
                 .overrideConfiguration(ClientOverrideConfiguration.builder()
                         .addExecutionInterceptor(new TracingInterceptor()) // XRay interceptor
+                        .addExecutionInterceptor(this.metrics) // Latency histograms, aws.calls
+                        .addMetricPublisher(this.http.metrics("dynamodb"))
                         .build())
                 .build();
     }
@@ -0,0 +1,53 @@
+package com.shop.product.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.awssdk.metrics.SdkMetric;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Connection pool state of an AWS client, as reported by its HTTP client on every request
+// aws.http.connections{client, state=leased|pending|available|max} and aws.http.connections.acquire{client}
+// Pending above 0 or acquire times growing mean requests are waiting for a connection
+final class HttpPoolMetrics implements MetricPublisher {
+    private final AtomicInteger leased = new AtomicInteger();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger available = new AtomicInteger();
+    private final AtomicInteger max = new AtomicInteger();
+    private final Timer acquire;
+
+    HttpPoolMetrics(MeterRegistry registry, String client) {
+        var tags = Tags.of("client", client);
+        registry.gauge("aws.http.connections", tags.and("state", "leased"), this.leased);
+        registry.gauge("aws.http.connections", tags.and("state", "pending"), this.pending);
+        registry.gauge("aws.http.connections", tags.and("state", "available"), this.available);
+        registry.gauge("aws.http.connections", tags.and("state", "max"), this.max);
+        this.acquire = Timer.builder("aws.http.connections.acquire")
+                .tags(tags)
+                .register(registry);
+    }
+
+    // Called once per API call, the pool values are in the attempt collections below it
+    @Override
+    public void publish(MetricCollection metrics) {
+        set(metrics, HttpMetric.LEASED_CONCURRENCY, this.leased);
+        set(metrics, HttpMetric.PENDING_CONCURRENCY_ACQUIRES, this.pending);
+        set(metrics, HttpMetric.AVAILABLE_CONCURRENCY, this.available);
+        set(metrics, HttpMetric.MAX_CONCURRENCY, this.max);
+        metrics.metricValues(HttpMetric.CONCURRENCY_ACQUIRE_DURATION).forEach(this.acquire::record);
+        metrics.children().forEach(this::publish);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private static void set(MetricCollection metrics, SdkMetric<Integer> metric, AtomicInteger gauge) {
+        var values = metrics.metricValues(metric);
+        if (!values.isEmpty()) gauge.set(values.getLast());
+    }
+}
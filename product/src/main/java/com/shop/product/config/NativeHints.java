@@ -0,0 +1,46 @@
+package com.shop.product.config;
+
+import com.shop.product.dto.ProductDto;
+import com.shop.product.dto.ProductErrorResponse;
+import com.shop.product.dto.ProductEventDto;
+import com.shop.product.dto.ProductFailureEventDto;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+import java.util.stream.Stream;
+
+// What the native image cannot find out by itself, read by Spring AOT at build time
+// The DynamoDB items need none, their TableSchemas do not use reflection
+public class NativeHints implements RuntimeHintsRegistrar {
+    // Serialized and read by Jackson outside of the request mappings, whose bodies Spring registers itself
+    private static final Class<?>[] JSON = {
+            ProductDto.class, // ProductJsonCache and the import stream
+            ProductErrorResponse.class, // Exception handler
+            ProductEventDto.class,
+            ProductFailureEventDto.class
+    };
+    // X-Ray reads its sampling rules and writes its segments with its own Jackson mapper
+    private static final String[] XRAY = {
+            "com.amazonaws.xray.strategy.sampling.manifest.SamplingRuleManifest",
+            "com.amazonaws.xray.strategy.sampling.rule.SamplingRule",
+            "com.amazonaws.xray.entities.EntityImpl",
+            "com.amazonaws.xray.entities.SegmentImpl",
+            "com.amazonaws.xray.entities.SubsegmentImpl",
+            "com.amazonaws.xray.entities.Cause",
+            "com.amazonaws.xray.entities.ThrowableDescription"
+    };
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(), JSON);
+        Stream.of(XRAY).forEach(type -> hints.reflection().registerTypeIfPresent(classLoader, type,
+                MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                MemberCategory.INVOKE_DECLARED_METHODS,
+                MemberCategory.DECLARED_FIELDS));
+        hints.resources()
+                .registerPattern("xray/xray-sampling-rules.json") // XRayConfig
+                .registerPattern("com/amazonaws/xray/*"); // Default sampling rules and SDK version
+    }
+}
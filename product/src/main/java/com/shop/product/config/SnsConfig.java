@@ -4,6 +4,7 @@ import com.amazonaws.xray.interceptors.TracingInterceptor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
 import software.amazon.awssdk.regions.Region;
@@ -12,6 +13,7 @@ import software.amazon.awssdk.services.sns.model.Topic;
 
 // SNS client configurations
 @Configuration
+@Profile("!inmemory") // InMemoryAwsConfig
 public class SnsConfig {
     @Value("${aws.region}")
     private String region;
@@ -19,13 +21,24 @@ public class SnsConfig {
     @Value("${aws.sns.topic.product.events}")
     private String productSnsTopicArn;
 
+    private final AwsHttpClients http;
+    private final AwsMetricsInterceptor metrics;
+
+    public SnsConfig(AwsHttpClients http, AwsMetricsInterceptor metrics) {
+        this.http = http;
+        this.metrics = metrics;
+    }
+
     @Bean
     public SnsAsyncClient snsClient() {
         return SnsAsyncClient.builder()
                 .credentialsProvider(DefaultCredentialsProvider.create()) // Published granted to the task role in the infra project
                 .region(Region.of(this.region))
+                .httpClient(this.http.create("sns")) // Own pool, aws.http.sns.* settings
                 .overrideConfiguration(ClientOverrideConfiguration.builder()
                     .addExecutionInterceptor(new TracingInterceptor()) // XRay interceptor
+                    .addExecutionInterceptor(this.metrics) // Latency histograms, aws.calls
+                    .addMetricPublisher(this.http.metrics("sns"))
                     .build())
                 .build();
     }
@@ -1,17 +1,73 @@
 package com.shop.product.config;
 
+import com.amazonaws.xray.AWSXRay;
 import com.amazonaws.xray.entities.Subsegment;
 import com.amazonaws.xray.spring.aop.BaseAbstractXRayInterceptor;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
 
 @Aspect
 @Component
 public class XRayInspector extends BaseAbstractXRayInterceptor {
+    private final boolean sampledOnly;
+
+    public XRayInspector(@Value("${aws.xray.inspector.sampled.only}") boolean sampledOnly) {
+        this.sampledOnly = sampledOnly;
+    }
+
+    // Unsampled requests are never sent to X-Ray, skips the subsegment and metadata built for nothing
+    // Reads the thread local entity only, nothing allocated on this path
+    @Override
+    protected Object processXRayTrace(ProceedingJoinPoint pjp) throws Throwable {
+        if (this.sampledOnly) {
+            var entity = AWSXRay.getTraceEntity();
+            if (entity == null || !entity.getParentSegment().isSampled()) return pjp.proceed();
+        }
+        if (CompletionStage.class.isAssignableFrom(((MethodSignature) pjp.getSignature()).getReturnType()))
+            return this.processAsync(pjp);
+        return super.processXRayTrace(pjp);
+    }
+
+    // Closed when the method returns, the subsegment would only time building the future
+    // It is ended when the future completes, on whichever thread completes it
+    private Object processAsync(ProceedingJoinPoint pjp) throws Throwable {
+        var parent = AWSXRay.getTraceEntity();
+        if (parent == null) return pjp.proceed();
+        var subsegment = AWSXRay.beginSubsegment(pjp.getSignature().getName());
+        var metadata = this.generateMetadata(pjp, subsegment);
+        if (metadata != null && !metadata.isEmpty()) subsegment.setMetadata(metadata);
+        Object result;
+        try {
+            result = pjp.proceed();
+        } catch (Throwable e) {
+            subsegment.addException(e);
+            AWSXRay.endSubsegment();
+            throw e;
+        }
+        AWSXRay.setTraceEntity(parent); // The caller goes on under its own entity
+        if (result == null) {
+            end(subsegment, null);
+            return null;
+        }
+        ((CompletionStage<?>) result).whenComplete((ignored, e) -> end(subsegment, e));
+        return result;
+    }
+
+    private static void end(Subsegment subsegment, Throwable e) {
+        if (e != null) subsegment.addException(e);
+        var current = AWSXRay.getTraceEntity();
+        AWSXRay.setTraceEntity(subsegment);
+        AWSXRay.endSubsegment();
+        if (current != null) AWSXRay.setTraceEntity(current);
+        else AWSXRay.clearTraceEntity();
+    }
 
     @Override
     protected Map<String, Map<String, Object>> generateMetadata(
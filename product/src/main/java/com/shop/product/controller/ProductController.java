@@ -1,105 +1,282 @@
 package com.shop.product.controller;
 
 import com.amazonaws.xray.spring.aop.XRayEnabled;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.shop.product.dto.EventType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.product.cache.ProductJsonCache;
+import com.shop.product.dto.ProductBatchGetDto;
+import com.shop.product.dto.ProductBatchGetResultDto;
+import com.shop.product.dto.ProductBatchItemDto;
 import com.shop.product.dto.ProductDto;
+import com.shop.product.dto.ProductImportResultDto;
+import com.shop.product.dto.ProductPagedDto;
 import com.shop.product.exception.ProductError;
 import com.shop.product.exception.ProductException;
+import com.shop.product.interceptor.RequestContext;
+import com.shop.product.model.Product;
+import com.shop.product.repository.ProductIds;
 import com.shop.product.repository.ProductRepository;
-import com.shop.product.service.SnsPublisher;
+import com.shop.product.repository.ProductScanner;
+import com.shop.product.service.ProductImporter;
+import jakarta.annotation.Nullable;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.logging.log4j.ThreadContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.UUID;
+import java.util.Base64;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 @RestController
 @RequestMapping("/api/products")
 @XRayEnabled // Inspects how much time it takes to execute an operation
+// Operations return futures, the request thread is released while DynamoDB and SNS answer
 public class ProductController {
     private static final Logger LOG = LogManager.getLogger(ProductController.class);
+    private static final String NDJSON = "application/x-ndjson";
+    private static final int DEFAULT_TAKE = 20;
+    private static final int MAX_TAKE = 100;
+    private static final int MAX_BATCH_GET = 500;
+    private static final int MAX_IMPORT = 5_000;
     private final ProductRepository repository;
-    private final SnsPublisher publisher;
+    private final ProductScanner scanner;
+    private final ProductImporter importer;
+    private final ObjectMapper mapper;
+    private final ProductJsonCache json;
+    private final int segments;
 
-    public ProductController(ProductRepository repository, SnsPublisher publisher) {
+    public ProductController(
+            ProductRepository repository,
+            ProductScanner scanner,
+            ProductImporter importer,
+            ObjectMapper mapper,
+            ProductJsonCache json,
+            @Value("${product.scan.segments}") int segments) {
         this.repository = repository;
-        this.publisher = publisher;
+        this.scanner = scanner;
+        this.importer = importer;
+        this.mapper = mapper;
+        this.json = json;
+        this.segments = segments;
     }
 
     @GetMapping
-    public ResponseEntity<?> get(@RequestParam(required = false) String code) throws ProductException {
+    public CompletableFuture<ResponseEntity<?>> get(
+            @RequestParam(required = false) String code,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor) throws ProductException {
         LOG.info("GET /products");
+        if (code == null && (limit != null || cursor != null)) {
+            LOG.info("GET /products?limit={}", limit);
+            return this.getPage(limit, cursor).thenApply(page -> new ResponseEntity<>(page, HttpStatus.OK));
+        }
         if (code == null) {
             var results = new ArrayList<ProductDto>();
-            this.repository
+            return this.repository
                     .get()
                     .items()
                     .subscribe(p -> results.add(new ProductDto(p)))
-                    .join();
-            return new ResponseEntity<>(results, HttpStatus.OK);
+                    .thenApply(ignored -> new ResponseEntity<>(results, HttpStatus.OK));
         }
 
         LOG.info("GET /products?code={}", code);
-        var result = this.repository.getByCode(code).join();
-        if (result == null) throw new ProductException(ProductError.PRODUCT_NOT_FOUND, null);
-        return new ResponseEntity<>(new ProductDto(result), HttpStatus.OK);
+        return this.repository.getByCode(code).thenApply(result -> {
+            if (result == null) throw error(ProductError.PRODUCT_NOT_FOUND, null);
+            return new ResponseEntity<>(new ProductDto(result), HttpStatus.OK);
+        });
+    }
+
+    // Accept: application/x-ndjson
+    // Writes every scanned page as soon as it arrives, one product per line
+    // No content length so the response goes out chunked
+    @GetMapping(produces = NDJSON, params = "!code")
+    public ResponseEntity<StreamingResponseBody> stream() {
+        LOG.info("GET /products - stream");
+        StreamingResponseBody body = out -> this.repository
+                .get()
+                .subscribe(page -> this.write(page.items(), out))
+                .join();
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .body(body);
     }
 
+    // Whole catalog for exports and reindexing, scanned in parallel segments
+    // products/export?segments=8
+    @GetMapping(value = "export", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(required = false) Integer segments) {
+        LOG.info("GET /products/export - {} segments", segments);
+        var total = segments == null ? this.segments : segments;
+        StreamingResponseBody body = out -> this.scanner
+                .scan(total, page -> this.write(page, out))
+                .join();
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .body(body);
+    }
+
+    // The ETag is the product version, a client sending it back gets a 304 while the product is unchanged
+    // The body is written as cached bytes, serialized once per version
     @GetMapping("{id}")
-    public ResponseEntity<ProductDto> getById(@PathVariable("id") String id) throws ProductException {
+    public CompletableFuture<ResponseEntity<byte[]>> getById(
+            @PathVariable("id") String id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         LOG.info("GET /products/{}", id);
-        var product = this.repository.getById(id).join();
-        if (product == null) throw new ProductException(ProductError.PRODUCT_NOT_FOUND, id);
-        return new ResponseEntity<>(new ProductDto(product), HttpStatus.OK);
+        return this.repository.getById(id).thenApply(product -> {
+            if (product == null) throw error(ProductError.PRODUCT_NOT_FOUND, id);
+            var json = this.json.get(product);
+            if (json.matches(ifNoneMatch))
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(json.etag())
+                        .cacheControl(CacheControl.noCache())
+                        .build();
+            return ResponseEntity.ok()
+                    .eTag(json.etag())
+                    .cacheControl(CacheControl.noCache()) // Revalidated on every use
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(json.body());
+        });
+    }
+
+    // Products for a list of ids in one call, e.g. a cart or an invoice
+    @PostMapping("batch-get")
+    public CompletableFuture<ResponseEntity<ProductBatchGetResultDto>> batchGet(@RequestBody ProductBatchGetDto dto) throws ProductException {
+        var ids = dto.ids() == null ? List.<String>of() : dto.ids();
+        LOG.info("POST /products/batch-get - {} ids", ids.size());
+        if (ids.size() > MAX_BATCH_GET) throw new ProductException(ProductError.PRODUCT_BATCH_TOO_LARGE, null);
+        return this.repository.getByIds(ids).thenApply(batch -> {
+            var found = batch.found();
+            var items = ids.stream()
+                    .map(id -> found.containsKey(id)
+                            ? new ProductBatchItemDto(id, true, new ProductDto(found.get(id)))
+                            : new ProductBatchItemDto(id, false, null))
+                    .toList();
+            // Unprocessed ids are neither found nor missing, the caller asks for them again
+            var unprocessed = ids.stream().filter(batch.unprocessed()::contains).distinct().toList();
+            var hits = (int) items.stream().filter(ProductBatchItemDto::found).count();
+            var misses = (int) ids.stream().filter(id -> !found.containsKey(id) && !batch.unprocessed().contains(id)).count();
+            if (!unprocessed.isEmpty()) LOG.warn("POST /products/batch-get - {} ids unprocessed", unprocessed.size());
+            return new ResponseEntity<>(new ProductBatchGetResultDto(items, hits, misses, unprocessed), HttpStatus.OK);
+        });
     }
 
     @PostMapping
-    public ResponseEntity<ProductDto> post(@RequestBody ProductDto dto) throws ProductException, JsonProcessingException, ExecutionException, InterruptedException {
+    public CompletableFuture<ResponseEntity<ProductDto>> post(@RequestBody ProductDto dto) {
         LOG.info("POST /products/");
+        var context = RequestContext.executor();
         var product = ProductDto.toProduct(dto);
-        product.setId(UUID.randomUUID().toString());
-        // Parallel - create product in DB and publish created event
-        var creating = this.repository.post(product);
-        var publishing = this.publisher.publish(product, EventType.PRODUCT_CREATED, "xrmeng720@gmail.com");
-        CompletableFuture.allOf(creating, publishing).join();
-        var response = publishing.get(); // To call after join
-        ThreadContext.put("eventId", response.messageId());
-        LOG.info("POST - OK - {}", product.getId());
-        return new ResponseEntity<>(new ProductDto(product), HttpStatus.CREATED);
+        product.setId(ProductIds.next());
+        // The code is only known to be free once the transaction went through
+        // The event is committed with it, the outbox relay publishes it
+        return this.repository.post(product, "xrmeng720@gmail.com").thenApplyAsync(ignored -> {
+            LOG.info("POST - OK - {}", product.getId());
+            return new ResponseEntity<>(new ProductDto(product), HttpStatus.CREATED);
+        }, context);
+    }
+
+    // Bulk creation from a JSON array or NDJSON body, read as a stream
+    // Answers with the outcome of every item so partial failures are visible
+    @PostMapping(value = "import", consumes = { MediaType.APPLICATION_JSON_VALUE, NDJSON })
+    public CompletableFuture<ResponseEntity<ProductImportResultDto>> importAll(InputStream body) throws ProductException, IOException {
+        LOG.info("POST /products/import");
+        var dtos = new ArrayList<ProductDto>();
+        // Unwraps a root level array, otherwise reads whitespace separated values
+        try (var values = this.mapper.readerFor(ProductDto.class).<ProductDto>readValues(body)) {
+            while (values.hasNextValue()) {
+                if (dtos.size() == MAX_IMPORT) throw new ProductException(ProductError.PRODUCT_BATCH_TOO_LARGE, null);
+                dtos.add(values.nextValue());
+            }
+        }
+        var context = RequestContext.executor();
+        return this.importer.importAll(dtos, "xrmeng720@gmail.com").thenApplyAsync(result -> {
+            LOG.info("POST /products/import - OK - {} created - {} failed", result.created(), result.failed());
+            return new ResponseEntity<>(result, HttpStatus.OK);
+        }, context);
     }
 
     @PutMapping("{id}")
-    public ResponseEntity<ProductDto> put(
+    public CompletableFuture<ResponseEntity<ProductDto>> put(
             @RequestBody ProductDto dto,
-            @PathVariable("id") String id) throws ProductException, JsonProcessingException {
-        try {
-            LOG.info("PUT /products/{}", id);
-            var product = ProductDto.toProduct(dto);
-            var result = this.repository.put(product, id).join();
-            var response = this.publisher.publish(product, EventType.PRODUCT_UPDATED, "xrmeng720@gmail.com").join();
-            ThreadContext.put("eventId", response.messageId());
+            @PathVariable("id") String id) {
+        LOG.info("PUT /products/{}", id);
+        var context = RequestContext.executor();
+        var product = ProductDto.toProduct(dto);
+        return this.repository.put(product, id, "xrmeng720@gmail.com").thenApplyAsync(result -> {
             LOG.info("PUT - OK - {}", result.getId());
             return new ResponseEntity<>(new ProductDto(result), HttpStatus.OK);
-        } catch (CompletionException e) {
-            throw new ProductException(ProductError.PRODUCT_NOT_FOUND, id);
-        }
+        }, context);
     }
 
     @DeleteMapping("{id}")
-    public ResponseEntity<ProductDto> delete(@PathVariable("id") String id) throws ProductException, JsonProcessingException {
-        var product = this.repository.delete(id).join();
-        if (product == null) throw new ProductException(ProductError.PRODUCT_NOT_FOUND, id);
-        var response = this.publisher.publish(product, EventType.PRODUCT_DELETED, "xrmeng720@gmail.com").join();
-        ThreadContext.put("eventId", response.messageId()); // The logs generated after this can contain the event id for tracing across services
-        LOG.info("DELETE /products/{}", id);
-        return new ResponseEntity<>(new ProductDto(product), HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<ProductDto>> delete(@PathVariable("id") String id) {
+        var context = RequestContext.executor();
+        return this.repository.delete(id, "xrmeng720@gmail.com").thenApplyAsync(product -> {
+            if (product == null) throw error(ProductError.PRODUCT_NOT_FOUND, id);
+            LOG.info("DELETE /products/{}", id);
+            return new ResponseEntity<>(new ProductDto(product), HttpStatus.OK);
+        }, context);
+    }
+
+    // Fails a future with the product error, Spring MVC unwraps it for the exception handler
+    private static CompletionException error(ProductError error, @Nullable String id) {
+        return new CompletionException(new ProductException(error, id));
+    }
+
+    private CompletableFuture<ProductPagedDto> getPage(Integer limit, String cursor) throws ProductException {
+        var take = Math.min(limit == null ? DEFAULT_TAKE : Math.max(limit, 1), MAX_TAKE);
+        var evaluatedAt = new AtomicReference<String>();
+        var results = new ArrayList<ProductDto>();
+        return this.repository
+                .getPage(take, decode(cursor))
+                .subscribe(page -> extract(page, results, evaluatedAt))
+                .thenApply(ignored -> new ProductPagedDto(results, encode(evaluatedAt.get()), results.size()));
+    }
+
+    private static void extract(Page<Product> page, List<ProductDto> results, AtomicReference<String> evaluatedAt) {
+        page.items().forEach(p -> results.add(new ProductDto(p)));
+        var notLastPage = page.lastEvaluatedKey() != null && !page.lastEvaluatedKey().isEmpty();
+        if (notLastPage) evaluatedAt.set(page.lastEvaluatedKey().get("id").s());
+    }
+
+    // The cursor is opaque to clients, it wraps the last evaluated id
+    private static String encode(String id) {
+        return id == null ? null :
+            Base64.getUrlEncoder().withoutPadding().encodeToString(id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String cursor) throws ProductException {
+        if (cursor == null) return null;
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new ProductException(ProductError.PRODUCT_INVALID_CURSOR, null);
+        }
+    }
+
+    private void write(List<Product> page, OutputStream out) {
+        try {
+            for (var product : page) {
+                out.write(this.mapper.writeValueAsBytes(new ProductDto(product)));
+                out.write('\n');
+            }
+            out.flush(); // Page by page to the client
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
@@ -0,0 +1,8 @@
+package com.shop.product.dto;
+
+import java.util.List;
+
+public record ProductBatchGetDto(
+        List<String> ids
+) {
+}
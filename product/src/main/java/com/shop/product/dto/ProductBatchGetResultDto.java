@@ -0,0 +1,12 @@
+package com.shop.product.dto;
+
+import java.util.List;
+
+// Items are in the order of the requested ids
+public record ProductBatchGetResultDto(
+        List<ProductBatchItemDto> items,
+        int found,
+        int missing,
+        List<String> unprocessed // Throttled even after the retries, not known to be missing
+) {
+}
@@ -0,0 +1,12 @@
+package com.shop.product.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+public record ProductBatchItemDto(
+        String id,
+        boolean found,
+        // Null for a miss
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        ProductDto product
+) {
+}
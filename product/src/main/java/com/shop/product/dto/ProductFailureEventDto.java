@@ -9,6 +9,8 @@ public record ProductFailureEventDto(
         // This id can be null
         // Don't include it in the event if it is null
         @JsonInclude(JsonInclude.Include.NON_NULL)
-        String id
+        String id,
+        // Identical failures merged into this event
+        int count
 ) {
 }
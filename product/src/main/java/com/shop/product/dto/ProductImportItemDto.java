@@ -0,0 +1,13 @@
+package com.shop.product.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+public record ProductImportItemDto(
+        int index, // Position in the request body
+        String code,
+        // The created product, or the one already holding the code
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        String id,
+        ProductImportStatus status
+) {
+}
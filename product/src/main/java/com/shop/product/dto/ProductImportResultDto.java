@@ -0,0 +1,10 @@
+package com.shop.product.dto;
+
+import java.util.List;
+
+public record ProductImportResultDto(
+        List<ProductImportItemDto> items,
+        int created,
+        int failed
+) {
+}
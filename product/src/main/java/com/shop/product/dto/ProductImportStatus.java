@@ -0,0 +1,7 @@
+package com.shop.product.dto;
+
+public enum ProductImportStatus {
+    CREATED,
+    CODE_CONFLICT,
+    FAILED
+}
@@ -0,0 +1,14 @@
+package com.shop.product.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+public record ProductPagedDto(
+        List<ProductDto> items,
+        // Null on the last page
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        String cursor,
+        int count
+) {
+}
@@ -0,0 +1,14 @@
+package com.shop.product.event;
+
+import com.shop.product.dto.EventType;
+import com.shop.product.model.Product;
+import jakarta.annotation.Nullable;
+
+// In-process notification raised by the repository once a write is committed
+// Keeps the local read caches in line with the table
+public record ProductChangedEvent(
+        Product product,
+        EventType type,
+        @Nullable String previousCode // Held by the product before the write, null for a create
+) {
+}
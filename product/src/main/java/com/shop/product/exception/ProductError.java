@@ -4,7 +4,9 @@ import org.springframework.http.HttpStatus;
 
 public enum ProductError {
     PRODUCT_NOT_FOUND("Product not found", HttpStatus.NOT_FOUND),
-    PRODUCT_CODE_CONFLICT("Product code conflict", HttpStatus.CONFLICT);
+    PRODUCT_CODE_CONFLICT("Product code conflict", HttpStatus.CONFLICT),
+    PRODUCT_INVALID_CURSOR("Invalid cursor", HttpStatus.BAD_REQUEST),
+    PRODUCT_BATCH_TOO_LARGE("Too many products in batch", HttpStatus.BAD_REQUEST);
 
     private final String message;
     private final HttpStatus status;
@@ -1,9 +1,7 @@
 package com.shop.product.exception;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.shop.product.dto.ProductErrorResponse;
-import com.shop.product.dto.ProductFailureEventDto;
-import com.shop.product.service.SnsPublisher;
+import com.shop.product.service.FailurePublisher;
 import org.apache.logging.log4j.ThreadContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,14 +15,14 @@ import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExcep
 @RestControllerAdvice
 public class ProductExceptionHandler extends ResponseEntityExceptionHandler {
     private static final Logger LOG = LoggerFactory.getLogger(ProductExceptionHandler.class);
-    private final SnsPublisher publisher;
+    private final FailurePublisher publisher;
 
-    public ProductExceptionHandler(SnsPublisher publisher) {
+    public ProductExceptionHandler(FailurePublisher publisher) {
         this.publisher = publisher;
     }
 
     @ExceptionHandler(value = { ProductException.class })
-    protected ResponseEntity<Object> handle(ProductException e, WebRequest request) throws JsonProcessingException {
+    protected ResponseEntity<Object> handle(ProductException e, WebRequest request) {
         var response = new ProductErrorResponse(
                 e.getError().getMessage(),
                 e.getError().getStatus().value(),
@@ -32,18 +30,10 @@ public class ProductExceptionHandler extends ResponseEntityExceptionHandler {
                 e.getId()
         );
 
-        var failure = new ProductFailureEventDto(
-                e.getError().getStatus().value(),
-                e.getError().getMessage(),
-              "xrmeng720@gmail.com",
-                e.getId()
-        );
-
-        // Publish event before CloudWatch
-        var result = this.publisher.publishFailure(failure).join();
-        ThreadContext.put("eventId", result.messageId());
+        // Queued, identical failures in the same window are published as one event
+        this.publisher.publish(e.getError(), e.getId());
 
-        LOG.error(e.getError().getMessage()); // This log will have eventId in contextMap
+        LOG.error(e.getError().getMessage());
 
         return handleExceptionInternal(
                 e,
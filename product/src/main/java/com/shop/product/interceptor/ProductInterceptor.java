@@ -1,21 +1,32 @@
 package com.shop.product.interceptor;
 
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.entities.Segment;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.apache.logging.log4j.ThreadContext;
 import org.springframework.stereotype.Component;
-import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
 import org.springframework.web.servlet.ModelAndView;
 
 @Component
-public class ProductInterceptor implements HandlerInterceptor {
+public class ProductInterceptor implements AsyncHandlerInterceptor {
+    private static final String SEGMENT = ProductInterceptor.class.getName() + ".segment";
 
     // Runs before the request gets to the controller
+    // and again when a completed future is dispatched back to a container thread
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
         // The header name is generated by API Gateway
         // Allows the request id to be injected in the log4j logs
         ThreadContext.put("requestId", request.getHeader("requestId"));
+        // The exception handler publishes the failure event with the trace id of the request
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            if (request.getAttribute(SEGMENT) instanceof Segment segment) AWSXRay.setTraceEntity(segment);
+        } else {
+            AWSXRay.getCurrentSegmentOptional().ifPresent(segment -> request.setAttribute(SEGMENT, segment));
+        }
         return true;
     }
     // Clears the context after each controller operation
@@ -23,4 +34,18 @@ public class ProductInterceptor implements HandlerInterceptor {
     public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView modelAndView) throws Exception {
         ThreadContext.clearAll();
     }
+
+    // The controller returned a future, the request thread goes back to the pool
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        ThreadContext.clearAll();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            ThreadContext.clearAll();
+            AWSXRay.clearTraceEntity(); // Set in preHandle, the servlet filter ends the segment
+        }
+    }
 }
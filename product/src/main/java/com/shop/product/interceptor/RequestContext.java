@@ -0,0 +1,36 @@
+package com.shop.product.interceptor;
+
+import com.amazonaws.xray.AWSXRay;
+import org.apache.logging.log4j.ThreadContext;
+
+import java.util.concurrent.Executor;
+
+// The log context and the X-Ray segment of a request belong to the thread that received it
+// Futures of the async clients complete on the SDK threads, which have neither
+public final class RequestContext {
+
+    private RequestContext() {
+    }
+
+    // Runs continuations in place with the context of the thread that created the executor
+    // Calls made from them are traced and logged as part of the same request
+    public static Executor executor() {
+        var context = ThreadContext.getImmutableContext();
+        var segment = AWSXRay.getCurrentSegmentOptional().orElse(null);
+        return task -> {
+            var previousContext = ThreadContext.getImmutableContext();
+            var previousEntity = AWSXRay.getTraceEntity();
+            ThreadContext.clearMap();
+            ThreadContext.putAll(context);
+            if (segment != null) AWSXRay.setTraceEntity(segment);
+            try {
+                task.run();
+            } finally {
+                ThreadContext.clearMap();
+                ThreadContext.putAll(previousContext);
+                if (previousEntity != null) AWSXRay.setTraceEntity(previousEntity);
+                else AWSXRay.clearTraceEntity();
+            }
+        };
+    }
+}
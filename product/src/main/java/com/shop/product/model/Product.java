@@ -9,6 +9,7 @@ import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecon
 public class Product {
     private String id, productName, productUrl, code, model;
     private float price;
+    private Long version; // Bumped on every write, null on items written before it existed
 
     @DynamoDbPartitionKey // PK
     public String getId() {
@@ -59,4 +60,12 @@ public class Product {
     public void setProductUrl(String productUrl) {
         this.productUrl = productUrl;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
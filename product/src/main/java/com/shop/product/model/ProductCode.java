@@ -0,0 +1,81 @@
+package com.shop.product.model;
+
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+
+// Reservation of a product code, stored in the products table next to the products
+// id is code#<code>, there is no code attribute so it stays out of IndexOnCode
+// Carries a copy of the product, rewritten with every write of it, so a lookup by code is a single read
+// Reservations written before the copy existed have no version
+@DynamoDbBean
+public class ProductCode {
+    private String id, productId, productName, productUrl, model;
+    private Float price;
+    private Long version;
+    private Long reservedAt; // Epoch millis of the last write, what the sweep of unwritten products goes by
+
+    @DynamoDbPartitionKey // PK
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public void setProductId(String productId) {
+        this.productId = productId;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    public String getProductUrl() {
+        return productUrl;
+    }
+
+    public void setProductUrl(String productUrl) {
+        this.productUrl = productUrl;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public Float getPrice() {
+        return price;
+    }
+
+    public void setPrice(Float price) {
+        this.price = price;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public Long getReservedAt() {
+        return reservedAt;
+    }
+
+    public void setReservedAt(Long reservedAt) {
+        this.reservedAt = reservedAt;
+    }
+}
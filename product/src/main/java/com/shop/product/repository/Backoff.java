@@ -0,0 +1,21 @@
+package com.shop.product.repository;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Exponential backoff with full jitter for the unprocessed part of batch requests
+final class Backoff {
+    static final int MAX_ATTEMPTS = 8;
+    private static final long BASE_MILLIS = 25;
+    private static final long MAX_MILLIS = 2_000;
+
+    private Backoff() {
+    }
+
+    static CompletableFuture<Void> after(int attempt) {
+        var ceiling = Math.min(MAX_MILLIS, BASE_MILLIS << Math.min(attempt, 16));
+        var delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS));
+    }
+}
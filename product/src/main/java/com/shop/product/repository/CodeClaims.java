@@ -0,0 +1,14 @@
+package com.shop.product.repository;
+
+import java.util.Map;
+import java.util.Set;
+
+// Outcome of ProductRepository.reserveAll, by product id
+// claimed are the reservations this call wrote, the caller releases those it does not write
+// failed ones are unknown, a reservation left behind is removed by the CodeReservationSweeper
+public record CodeClaims(
+        Set<String> claimed,
+        Map<String, String> conflicts, // product id -> holder of the code
+        Set<String> failed
+) {
+}
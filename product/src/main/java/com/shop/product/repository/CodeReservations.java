@@ -0,0 +1,128 @@
+package com.shop.product.repository;
+
+import com.shop.product.model.Product;
+import com.shop.product.model.ProductCode;
+import jakarta.annotation.Nullable;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.Delete;
+import software.amazon.awssdk.services.dynamodb.model.Put;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+
+import java.time.Instant;
+import java.util.Map;
+
+// Code reservation items, written in the same transaction as the product
+// so that two products can never hold the same code
+final class CodeReservations {
+    static final String PREFIX = "code#";
+    // Reservations share the table with the products, scans leave them out
+    static final String PRODUCTS_ONLY = "NOT begins_with(id, :reservation)";
+    static final Map<String, AttributeValue> PRODUCTS_ONLY_VALUES = Map.of(":reservation", s(PREFIX));
+    static final String RESERVATIONS_ONLY = "begins_with(id, :reservation)";
+
+    private static final String HELD_BY = "attribute_not_exists(id) OR productId = :productId";
+    private static final String CONDITIONAL_CHECK_FAILED = "ConditionalCheckFailed";
+
+    private final String table;
+    private final TableSchema<ProductCode> schema = TableSchemas.PRODUCT_CODE;
+
+    CodeReservations(String table) {
+        this.table = table;
+    }
+
+    static String id(String code) {
+        return PREFIX.concat(code);
+    }
+
+    static boolean isReservation(String id) {
+        return id.startsWith(PREFIX);
+    }
+
+    ProductCode of(Product product) {
+        var code = new ProductCode();
+        code.setId(id(product.getCode()));
+        code.setProductId(product.getId());
+        code.setProductName(product.getProductName());
+        code.setProductUrl(product.getProductUrl());
+        code.setModel(product.getModel());
+        code.setPrice(product.getPrice());
+        code.setVersion(product.getVersion());
+        code.setReservedAt(Instant.now().toEpochMilli());
+        return code;
+    }
+
+    // The product copied into a reservation, null when it has no copy
+    @Nullable
+    Product product(Map<String, AttributeValue> item) {
+        var code = this.schema.mapToItem(item);
+        if (code.getVersion() == null) return null;
+        var product = new Product();
+        product.setId(code.getProductId());
+        product.setCode(code.getId().substring(PREFIX.length()));
+        product.setProductName(code.getProductName());
+        product.setProductUrl(code.getProductUrl());
+        product.setModel(code.getModel());
+        product.setPrice(code.getPrice() == null ? 0 : code.getPrice());
+        product.setVersion(code.getVersion());
+        return product;
+    }
+
+    Map<String, AttributeValue> item(Product product) {
+        return this.schema.itemToMap(this.of(product), true);
+    }
+
+    Map<String, AttributeValue> key(String code) {
+        return Map.of("id", s(id(code)));
+    }
+
+    // Fails the transaction when another product holds the code
+    // The holder comes back in the cancellation reason
+    // Also how every write of a product refreshes the copy in its reservation
+    TransactWriteItem reserve(Product product) {
+        return TransactWriteItem.builder()
+                .put(Put.builder()
+                        .tableName(this.table)
+                        .item(this.item(product))
+                        .conditionExpression(HELD_BY)
+                        .expressionAttributeValues(Map.of(":productId", s(product.getId())))
+                        .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+                        .build())
+                .build();
+    }
+
+    // Products written before reservations existed have none to release
+    TransactWriteItem release(String code, String productId) {
+        return TransactWriteItem.builder()
+                .delete(Delete.builder()
+                        .tableName(this.table)
+                        .key(this.key(code))
+                        .conditionExpression(HELD_BY)
+                        .expressionAttributeValues(Map.of(":productId", s(productId)))
+                        .build())
+                .build();
+    }
+
+    static boolean failed(TransactionCanceledException e, int index) {
+        var reasons = e.cancellationReasons();
+        return reasons.size() > index && CONDITIONAL_CHECK_FAILED.equals(reasons.get(index).code());
+    }
+
+    // Product holding the code of a failed reservation
+    @Nullable
+    static String holder(TransactionCanceledException e, int index) {
+        var item = e.cancellationReasons().get(index).item();
+        var productId = item == null ? null : item.get("productId");
+        return productId == null ? null : productId.s();
+    }
+
+    static AttributeValue s(String value) {
+        return AttributeValue.builder().s(value).build();
+    }
+
+    static AttributeValue n(long value) {
+        return AttributeValue.builder().n(String.valueOf(value)).build();
+    }
+}
@@ -0,0 +1,14 @@
+package com.shop.product.repository;
+
+import com.shop.product.model.Product;
+
+import java.util.Map;
+import java.util.Set;
+
+// Outcome of ProductRepository.getByIds
+// An id in neither was not found, an unprocessed one is unknown and worth asking for again
+public record ProductBatch(
+        Map<String, Product> found,
+        Set<String> unprocessed
+) {
+}
@@ -0,0 +1,38 @@
+package com.shop.product.repository;
+
+import java.util.UUID;
+
+// Product ids are time-ordered UUIDs (version 7), the creation time can be read back from the id
+// The random bits still come from UUID.randomUUID, ids are as hard to guess as before
+public final class ProductIds {
+    private ProductIds() {
+    }
+
+    public static String next() {
+        var random = UUID.randomUUID();
+        var msb = (System.currentTimeMillis() << 16) | 0x7000L | (random.getMostSignificantBits() & 0x0FFFL);
+        return new UUID(msb, random.getLeastSignificantBits()).toString(); // Same variant bits as the random one
+    }
+
+    // Every product id is a UUID, of any version
+    public static boolean valid(String id) {
+        if (id == null || id.length() != 36) return false;
+        try {
+            UUID.fromString(id);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // Epoch millis of the creation, -1 for ids written before ids were time-ordered or not ids at all
+    public static long createdAt(String id) {
+        if (id.length() != 36) return -1;
+        try {
+            var uuid = UUID.fromString(id);
+            return uuid.version() == 7 ? uuid.getMostSignificantBits() >>> 16 : -1;
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+}
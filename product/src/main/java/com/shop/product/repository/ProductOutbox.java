@@ -0,0 +1,215 @@
+package com.shop.product.repository;
+
+import com.amazonaws.xray.AWSXRay;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.shop.product.codec.EventEncoder;
+import com.shop.product.dto.EventType;
+import com.shop.product.dto.ProductEventDto;
+import com.shop.product.model.OutboxEvent;
+import com.shop.product.model.Product;
+import jakarta.annotation.Nullable;
+import org.apache.logging.log4j.ThreadContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncTable;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.model.DeleteItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.Put;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+// Product events written in the same transaction as the product, published later by the relay
+// Events of a product always land in the same shard, one relay at a time holds the lease of a shard
+// Next to them a change log of updated and deleted ids, kept for the retention and read by every task
+@Repository
+public class ProductOutbox {
+    private static final String EVENTS = "events#";
+    private static final String LEASES = "leases";
+    private static final String CHANGES = "changes#";
+    private static final String LEASE_FREE = "attribute_not_exists(shard) OR expiresAt < :now OR #owner = :owner";
+
+    private final DynamoDbAsyncClient client;
+    private final DynamoDbAsyncTable<OutboxEvent> events;
+    private final EventEncoder encoder;
+    private final int shards;
+    private final Duration retention; // Of the change log, removed by the TTL of the table after
+
+    public ProductOutbox(
+            DynamoDbEnhancedAsyncClient dynamoDbClient,
+            DynamoDbAsyncClient client,
+            EventEncoder encoder,
+            @Value("${aws.product.outbox.table.name}") String table,
+            @Value("${product.outbox.shards}") int shards,
+            @Value("${product.outbox.changes.retention.seconds}") long retention) {
+        this.client = client;
+        this.events = dynamoDbClient.table(table, TableSchemas.OUTBOX_EVENT);
+        this.encoder = encoder;
+        this.shards = shards;
+        this.retention = Duration.ofSeconds(retention);
+    }
+
+    public int shards() {
+        return this.shards;
+    }
+
+    // Put of the event, to go in the transaction of the product write
+    // Request and trace ids are taken from the calling thread, the relay publishes with them
+    TransactWriteItem append(Product product, EventType type, String email) {
+        var createdAt = Instant.now().toEpochMilli();
+        var event = new OutboxEvent();
+        event.setShard(EVENTS + Math.floorMod(product.getId().hashCode(), this.shards));
+        // Time ordered within the shard, as far as the clocks of the tasks agree
+        event.setId("%013d#%s".formatted(createdAt, UUID.randomUUID()));
+        event.setProductId(product.getId());
+        event.setEventType(type.name());
+        event.setMessage(this.message(product, email));
+        event.setContentType(this.encoder.contentType());
+        event.setRequestId(ThreadContext.get("requestId"));
+        event.setTraceId(AWSXRay.getCurrentSegmentOptional()
+                .map(segment -> segment.getTraceId().toString())
+                .orElse(null));
+        event.setCreatedAt(createdAt);
+        return TransactWriteItem.builder()
+                .put(Put.builder()
+                        .tableName(this.events.tableName())
+                        .item(this.events.tableSchema().itemToMap(event, true))
+                        .build())
+                .build();
+    }
+
+    // Put of the id in the change log, to go in the transaction of an update or a delete
+    // Creates need none, readers of an older copy of the catalog do not have the product
+    TransactWriteItem change(Product product) {
+        var createdAt = Instant.now().toEpochMilli();
+        return TransactWriteItem.builder()
+                .put(Put.builder()
+                        .tableName(this.events.tableName())
+                        .item(Map.of(
+                                "shard", CodeReservations.s(CHANGES + Math.floorMod(product.getId().hashCode(), this.shards)),
+                                "id", CodeReservations.s("%013d#%s".formatted(createdAt, UUID.randomUUID())),
+                                "productId", CodeReservations.s(product.getId()),
+                                "createdAt", CodeReservations.n(createdAt),
+                                "ttl", CodeReservations.n((createdAt + this.retention.toMillis()) / 1000))) // Epoch seconds
+                        .build())
+                .build();
+    }
+
+    // Ids changed in a shard since the time, by when they last changed as far as the clocks of the tasks agree
+    public CompletableFuture<Map<String, Long>> changes(int shard, long since) {
+        var changes = new HashMap<String, Long>();
+        return this.changes(shard, since, null, changes).thenApply(ignored -> changes);
+    }
+
+    // Oldest events of a shard first
+    public CompletableFuture<List<OutboxEvent>> pending(int shard, int limit) {
+        var results = new ArrayList<OutboxEvent>();
+        var pagesCount = 1;
+        return this.events
+                .query(QueryEnhancedRequest.builder()
+                        .queryConditional(QueryConditional.keyEqualTo(Key.builder()
+                                .partitionValue(EVENTS + shard)
+                                .build()))
+                        .consistentRead(true) // Just committed events are not missed
+                        .limit(limit)
+                        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                        .build())
+                .limit(pagesCount)
+                .subscribe(page -> results.addAll(page.items()))
+                .thenApply(ignored -> results);
+    }
+
+    public CompletableFuture<Void> remove(Collection<OutboxEvent> published) {
+        var deletes = published.stream()
+                .map(event -> this.events.deleteItem(DeleteItemEnhancedRequest.builder()
+                        .key(Key.builder()
+                                .partitionValue(event.getShard())
+                                .sortValue(event.getId())
+                                .build())
+                        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                        .build()))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(deletes);
+    }
+
+    // Takes or renews the lease of a shard, false while another relay holds it
+    public CompletableFuture<Boolean> lease(int shard, String owner, Duration duration) {
+        var now = Instant.now().toEpochMilli();
+        var request = PutItemRequest.builder()
+                .tableName(this.events.tableName())
+                .item(Map.of(
+                        "shard", CodeReservations.s(LEASES),
+                        "id", CodeReservations.s(String.valueOf(shard)),
+                        "owner", CodeReservations.s(owner),
+                        "expiresAt", CodeReservations.n(now + duration.toMillis())))
+                .conditionExpression(LEASE_FREE)
+                .expressionAttributeNames(Map.of("#owner", "owner")) // Reserved word
+                .expressionAttributeValues(Map.of(
+                        ":now", CodeReservations.n(now),
+                        ":owner", CodeReservations.s(owner)))
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .build();
+        return this.client.putItem(request)
+                .thenApply(ignored -> true)
+                .exceptionallyCompose(e -> ProductRepository.cause(e) instanceof ConditionalCheckFailedException
+                        ? CompletableFuture.completedFuture(false)
+                        : CompletableFuture.failedFuture(e));
+    }
+
+    private CompletableFuture<Void> changes(
+            int shard,
+            long since,
+            @Nullable Map<String, AttributeValue> startKey,
+            Map<String, Long> changes) {
+        var request = QueryRequest.builder()
+                .tableName(this.events.tableName())
+                .keyConditionExpression("#shard = :shard AND #id > :since")
+                .expressionAttributeNames(Map.of("#shard", "shard", "#id", "id"))
+                .expressionAttributeValues(Map.of(
+                        ":shard", CodeReservations.s(CHANGES + shard),
+                        ":since", CodeReservations.s("%013d".formatted(since))))
+                .exclusiveStartKey(startKey)
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .build();
+        return this.client.query(request).thenCompose(response -> {
+            response.items().forEach(item -> changes.merge(
+                    item.get("productId").s(),
+                    Long.parseLong(item.get("createdAt").n()),
+                    Math::max));
+            if (!response.hasLastEvaluatedKey() || response.lastEvaluatedKey().isEmpty())
+                return CompletableFuture.completedFuture(null);
+            return this.changes(shard, since, response.lastEvaluatedKey(), changes);
+        });
+    }
+
+    private String message(Product product, String email) {
+        var dto = new ProductEventDto(
+                product.getId(),
+                product.getCode(),
+                product.getPrice(),
+                email);
+        try {
+            return this.encoder.encode(dto);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,102 +1,689 @@
 package com.shop.product.repository;
 
 import com.amazonaws.xray.spring.aop.XRayEnabled;
+import com.shop.product.cache.ProductCache;
+import com.shop.product.cache.ProductCatalog;
+import com.shop.product.cache.ProductCodeCache;
+import com.shop.product.cache.ProductIdFilter;
+import com.shop.product.dto.EventType;
+import com.shop.product.event.ProductChangedEvent;
 import com.shop.product.exception.ProductError;
 import com.shop.product.exception.ProductException;
+import com.shop.product.interceptor.RequestContext;
 import com.shop.product.model.Product;
+import com.shop.product.model.ProductCode;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Nullable;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.core.async.SdkPublisher;
 import software.amazon.awssdk.enhanced.dynamodb.*;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
 import software.amazon.awssdk.enhanced.dynamodb.model.PagePublisher;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
-import software.amazon.awssdk.enhanced.dynamodb.model.UpdateItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.GetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ConditionCheck;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.Delete;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.Put;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Repository
 @XRayEnabled
 public class ProductRepository {
     private static final Logger LOG = LogManager.getLogger(ProductRepository.class);
 
+    private static final int BATCH_GET_SIZE = 100; // BatchGetItem limit
+    private static final int TRANSACT_SIZE = 100; // TransactWriteItems limit
+    private static final int IMPORT_SIZE = 12; // Products per transaction, with their events 24 items
+    private static final Expression PRODUCTS_ONLY = Expression.builder()
+            .expression(CodeReservations.PRODUCTS_ONLY)
+            .expressionValues(CodeReservations.PRODUCTS_ONLY_VALUES)
+            .build();
+
     private final DynamoDbEnhancedAsyncClient dynamoDbClient;
+    private final DynamoDbAsyncClient client; // For the batch operations the enhanced client does not retry with backoff
     private DynamoDbAsyncTable<Product> products; // To access the typed items in the table
+    private final CodeReservations reservations;
+    private final ProductCache cache;
+    private final ProductCodeCache codes;
+    private final ProductIdFilter ids; // Ids known not to exist are not read
+    private final ProductCatalog catalog; // Local snapshot of the table, for cache misses
+    private final ProductOutbox outbox; // Events are committed with the write that caused them
+    private final ApplicationEventPublisher events; // Notifies the local caches of committed writes
+    private final SingleFlight<Product> byId; // Concurrent misses of one id share a GetItem
+    private final SingleFlight<Product> byCode; // and of one code a reservation read
+    private final boolean indexFallback; // Off once every product has its code reserved
 
     public ProductRepository(
             DynamoDbEnhancedAsyncClient dynamoDbClient,
-            @Value("${aws.product.table.name}") String table) {
+            DynamoDbAsyncClient client,
+            @Value("${aws.product.table.name}") String table,
+            ProductCache cache,
+            ProductCodeCache codes,
+            ProductIdFilter ids,
+            ProductCatalog catalog,
+            ProductOutbox outbox,
+            ApplicationEventPublisher events,
+            MeterRegistry registry,
+            @Value("${product.code.index.fallback}") boolean indexFallback) {
         this.dynamoDbClient = dynamoDbClient;
-        this.products = this.dynamoDbClient.table(table, TableSchema.fromBean(Product.class));
+        this.client = client;
+        this.products = this.dynamoDbClient.table(table, TableSchemas.PRODUCT);
+        this.reservations = new CodeReservations(table);
+        this.cache = cache;
+        this.codes = codes;
+        this.ids = ids;
+        this.catalog = catalog;
+        this.outbox = outbox;
+        this.events = events;
+        this.byId = new SingleFlight<>(registry, "id");
+        this.byCode = new SingleFlight<>(registry, "code");
+        this.indexFallback = indexFallback;
     }
 
     public PagePublisher<Product> get() {
-        return this.products.scan(); // Do not use in prod
+        return this.products.scan(ScanEnhancedRequest.builder()
+                .filterExpression(PRODUCTS_ONLY)
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .build()); // Do not use in prod
+    }
+
+    // products?limit=20&cursor=...
+    // One scan page of at most take items, resumed after the id of the previous page's last key
+    public SdkPublisher<Page<Product>> getPage(int take, String startedAfterExclusive) {
+        var request = ScanEnhancedRequest.builder()
+                .exclusiveStartKey(this.createExclusiveStartKey(startedAfterExclusive))
+                .filterExpression(PRODUCTS_ONLY) // A page can come back with fewer items
+                .limit(take)
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .build();
+        var pagesCount = 1;
+        return this.products.scan(request).limit(pagesCount);
     }
 
     public CompletableFuture<Product> getById(String id) {
         LOG.info("Product ID: {}", id);
-       var key = Key.builder()
-               .partitionValue(id)
-               .build();
-       return this.products.getItem(key);
+        if (CodeReservations.isReservation(id))
+            return CompletableFuture.completedFuture(null);
+        var cached = this.cache.get(id);
+        if (cached != null)
+            return CompletableFuture.completedFuture(cached);
+        if (this.ids.absent(id))
+            return CompletableFuture.completedFuture(null);
+        var snapshot = this.catalog.get(id);
+        if (snapshot != null)
+            return CompletableFuture.completedFuture(snapshot);
+        var stamp = this.cache.stamp();
+        var request = GetItemEnhancedRequest.builder()
+                .key(Key.builder().partitionValue(id).build())
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL) // For aws.dynamodb.capacity
+                .build();
+        return this.byId.get(id, this.cache.version(id), () -> this.products.getItem(request).thenApply(product -> {
+            if (product != null) this.cache.fill(product, stamp);
+            return product;
+        }));
+    }
+
+    // Found products by id, served from the cache first
+    // The misses are split into BatchGetItem calls of 100 keys that run concurrently
+    // Keys still unprocessed after the retries are reported rather than failing the others
+    public CompletableFuture<ProductBatch> getByIds(List<String> ids) {
+        var found = new HashMap<String, Product>();
+        var keys = new ArrayList<Map<String, AttributeValue>>();
+        for (var id : new LinkedHashSet<>(ids)) {
+            if (CodeReservations.isReservation(id)) continue;
+            var cached = this.cache.get(id);
+            if (cached != null) found.put(id, cached);
+            else if (!this.ids.absent(id)) keys.add(Map.of("id", AttributeValue.builder().s(id).build()));
+        }
+        if (keys.isEmpty())
+            return CompletableFuture.completedFuture(new ProductBatch(found, Set.of()));
+
+        var stamp = this.cache.stamp();
+        var batches = new ArrayList<CompletableFuture<BatchRead>>();
+        for (var i = 0; i < keys.size(); i += BATCH_GET_SIZE)
+            batches.add(this.batchGet(keys.subList(i, Math.min(i + BATCH_GET_SIZE, keys.size())), 0));
+        return CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new)).thenApply(ignored -> {
+            var unprocessed = new HashSet<String>();
+            batches.forEach(batch -> {
+                var read = batch.join();
+                read.items().forEach(product -> {
+                    this.cache.fill(product, stamp);
+                    found.put(product.getId(), product);
+                });
+                unprocessed.addAll(read.unprocessed());
+            });
+            return new ProductBatch(found, unprocessed);
+        });
     }
 
-    public CompletableFuture<Void> post(Product product) throws ProductException {
-        var result = this.getByCodeGSI(product.getCode()).join();
-        if (result == null)
-            return this.products.putItem(product);
-        throw new ProductException(ProductError.PRODUCT_CODE_CONFLICT, result.getId());
+    // The product and its code reservation are written in one transaction
+    // Two concurrent posts with the same code cannot both succeed
+    // The code cache only serves reads, a conflict is only known from the transaction
+    public CompletableFuture<Void> post(Product product, String email) {
+        product.setVersion(1L);
+        var request = TransactWriteItemsRequest.builder()
+                .transactItems(
+                        this.write(product, null),
+                        this.reservations.reserve(product),
+                        this.outbox.append(product, EventType.PRODUCT_CREATED, email))
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .build();
+        return this.client.transactWriteItems(request)
+                .exceptionallyCompose(e -> CompletableFuture.failedFuture(cancelled(e, 1)))
+                .thenRun(() -> this.changed(product, EventType.PRODUCT_CREATED, null));
+    }
+
+    // Bulk import, codes are to be reserved first and versions set
+    // Every product is put with its PRODUCT_CREATED event in the outbox, in TransactWriteItems of 12 products
+    // that run concurrently, so the relay publishes the events of imports like those of single writes
+    // Completes with the ids that could not be written
+    public CompletableFuture<Set<String>> postAll(List<Product> products, String email) {
+        var batches = new ArrayList<CompletableFuture<Set<String>>>();
+        for (var i = 0; i < products.size(); i += IMPORT_SIZE) {
+            var batch = products.subList(i, Math.min(i + IMPORT_SIZE, products.size()));
+            var items = new ArrayList<TransactWriteItem>();
+            for (var product : batch) {
+                items.add(this.write(product, null));
+                items.add(this.outbox.append(product, EventType.PRODUCT_CREATED, email));
+            }
+            var request = TransactWriteItemsRequest.builder()
+                    .transactItems(items)
+                    .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                    .build();
+            var ids = batch.stream().map(Product::getId).collect(Collectors.toSet());
+            batches.add(this.client.transactWriteItems(request)
+                    .thenApply(ignored -> Set.<String>of())
+                    .exceptionally(e -> {
+                        LOG.error("TransactWriteItems - {} imported products - failed", batch.size(), e);
+                        return ids;
+                    }));
+        }
+        return CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new)).thenApply(ignored -> {
+            var failed = new HashSet<String>();
+            batches.forEach(batch -> failed.addAll(batch.join()));
+            products.stream()
+                    .filter(product -> !failed.contains(product.getId()))
+                    .forEach(product -> this.changed(product, EventType.PRODUCT_CREATED, null));
+            return failed;
+        });
     }
 
-    public CompletableFuture<Product> put(Product product, String id) throws ProductException {
+    // Updates only when the stored product still has the code and version it was read with
+    // A code change releases the old reservation and takes the new one in the same transaction
+    public CompletableFuture<Product> put(Product product, String id, String email) {
         product.setId(id);
-        var result = this.getByCodeGSI(product.getCode()).join();
-        if (result != null && !result.getId().equals(product.getId()))
-            throw new ProductException(ProductError.PRODUCT_CODE_CONFLICT, result.getId());
-        // Updates only when the incoming product has the passed in id
-        // Avoids a query to check if the product exists in the database
-        var condition = Expression.builder()
-                .expression("attribute_exists(id)")
+        return this.retryStale(id, consistent -> this.put(product, email, consistent));
+    }
+
+    public CompletableFuture<Product> delete(String id, String email) {
+        return this.retryStale(id, consistent -> this.delete(id, email, consistent))
+                .thenApply(deleted -> {
+                    if (deleted != null) this.changed(deleted, EventType.PRODUCT_DELETED, deleted.getCode());
+                    return deleted;
+                });
+    }
+
+    // Claims the codes of imported products a whole chunk at a time
+    // The reservations of 100 codes are read in one BatchGetItem, codes already held are conflicts
+    // and the free ones are claimed in one TransactWriteItems of 100 puts
+    // A transaction cancelled by a code taken in between falls back to one claim per product for the rest of its chunk
+    // Every claim has its own outcome, a failed one does not fail the others
+    public CompletableFuture<CodeClaims> reserveAll(List<Product> products) {
+        var context = RequestContext.executor();
+        var claims = new CodeClaims(ConcurrentHashMap.newKeySet(), new ConcurrentHashMap<>(), ConcurrentHashMap.newKeySet());
+        var chunks = new ArrayList<CompletableFuture<Void>>();
+        for (var i = 0; i < products.size(); i += TRANSACT_SIZE) {
+            var chunk = products.subList(i, Math.min(i + TRANSACT_SIZE, products.size()));
+            chunks.add(this.holders(chunk).thenComposeAsync(holders -> {
+                var free = new ArrayList<Product>();
+                var repeated = new ArrayList<Product>(); // A transaction cannot put one item twice
+                var codes = new HashSet<String>();
+                for (var product : chunk) {
+                    var holder = holders.get(product.getCode());
+                    if (holder != null) claims.conflicts().put(product.getId(), holder);
+                    else if (codes.add(product.getCode())) free.add(product);
+                    else repeated.add(product);
+                }
+                return this.claimAll(free, claims).thenCompose(ignored -> CompletableFuture.allOf(repeated.stream()
+                        .map(product -> this.claim(product, claims))
+                        .toArray(CompletableFuture[]::new)));
+            }, context));
+        }
+        return CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new)).thenApply(ignored -> claims);
+    }
+
+    // Gives back the codes of imported products, those of products that were written are kept
+    // A failed release is logged, not raised, the sweep removes the reservation later
+    public CompletableFuture<Void> releaseAll(Collection<Product> products) {
+        var releases = products.stream()
+                .map(product -> this.release(product.getCode(), product.getId()))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(releases);
+    }
+
+    // Releases the reservations, older than the grace period, whose product was never written
+    // e.g. an import that failed between the claims and the writes
+    // Completes with the number released
+    public CompletableFuture<Integer> releaseOrphans(List<ProductCode> reservations, Duration grace) {
+        var before = Instant.now().minus(grace).toEpochMilli();
+        var old = reservations.stream()
+                .filter(code -> code.getReservedAt() == null || code.getReservedAt() < before)
+                .toList();
+        if (old.isEmpty()) return CompletableFuture.completedFuture(0);
+        var keys = old.stream()
+                .map(code -> Map.of("id", CodeReservations.s(code.getProductId())))
+                .distinct()
+                .toList();
+        var batches = new ArrayList<CompletableFuture<BatchRead>>();
+        for (var i = 0; i < keys.size(); i += BATCH_GET_SIZE)
+            batches.add(this.batchGet(keys.subList(i, Math.min(i + BATCH_GET_SIZE, keys.size())), 0));
+        return CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new)).thenCompose(ignored -> {
+            var known = new HashSet<String>(); // Written, or not known not to be
+            batches.forEach(batch -> {
+                batch.join().items().forEach(product -> known.add(product.getId()));
+                known.addAll(batch.join().unprocessed());
+            });
+            var orphans = old.stream().filter(code -> !known.contains(code.getProductId())).toList();
+            var releases = orphans.stream()
+                    .map(code -> {
+                        LOG.warn("Code {} - product {} was never written - released", code.getId(), code.getProductId());
+                        return this.release(code.getId().substring(CodeReservations.PREFIX.length()), code.getProductId());
+                    })
+                    .toArray(CompletableFuture[]::new);
+            return CompletableFuture.allOf(releases).thenApply(none -> orphans.size());
+        });
+    }
+
+    // Deletes the reservation only while the product still holds it and was never written
+    // so that releasing the claims of an import that failed half way is always safe
+    private CompletableFuture<Void> release(String code, String productId) {
+        var request = TransactWriteItemsRequest.builder()
+                .transactItems(
+                        TransactWriteItem.builder()
+                                .conditionCheck(ConditionCheck.builder()
+                                        .tableName(this.products.tableName())
+                                        .key(Map.of("id", CodeReservations.s(productId)))
+                                        .conditionExpression("attribute_not_exists(id)")
+                                        .build())
+                                .build(),
+                        TransactWriteItem.builder()
+                                .delete(Delete.builder()
+                                        .tableName(this.products.tableName())
+                                        .key(this.reservations.key(code))
+                                        .conditionExpression("productId = :productId")
+                                        .expressionAttributeValues(Map.of(":productId", CodeReservations.s(productId)))
+                                        .build())
+                                .build())
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
                 .build();
-        var request = UpdateItemEnhancedRequest.builder(Product.class)
-                .item(product)
-                .conditionExpression(condition)
+        return this.client.transactWriteItems(request).handle((ignored, e) -> {
+            if (e != null && !(cause(e) instanceof TransactionCanceledException)) // Written, or held by another
+                LOG.error("TransactWriteItems - code {} - release failed", code, e);
+            return null;
+        });
+    }
+
+    // One read of the code reservation, which carries a copy of the product
+    // Reservations without a copy point to the product, codes without a reservation are looked up in IndexOnCode
+    public CompletableFuture<Product> getByCode(String code) {
+        var context = RequestContext.executor();
+        var cached = this.codes.get(code);
+        if (cached != null)
+            return cached.isPresent()
+                    ? this.getById(cached.get())
+                    : CompletableFuture.completedFuture(null);
+        var stamp = this.codes.stamp();
+        var products = this.cache.stamp();
+        return this.byCode.get(code, this.codes.version(code), () -> this.client.getItem(GetItemRequest.builder()
+                        .tableName(this.products.tableName())
+                        .key(this.reservations.key(code))
+                        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                        .build())
+                .thenComposeAsync(response -> {
+                    if (!response.hasItem()) {
+                        if (!this.indexFallback) {
+                            this.codes.fill(code, null, stamp);
+                            return CompletableFuture.<Product>completedFuture(null);
+                        }
+                        return this.getIdByCode(code, stamp).thenCompose(id -> id == null
+                                ? CompletableFuture.<Product>completedFuture(null)
+                                : this.getById(id));
+                    }
+                    var product = this.reservations.product(response.item());
+                    if (product == null) { // Reserved before reservations carried the product
+                        var id = response.item().get("productId").s();
+                        this.codes.fill(code, id, stamp);
+                        return this.getById(id);
+                    }
+                    this.codes.fill(code, product.getId(), stamp);
+                    this.cache.fill(product, products);
+                    return CompletableFuture.completedFuture(product);
+                }, context));
+    }
+
+    // Products written before code reservations existed and not backfilled
+    private CompletableFuture<String> getIdByCode(String code, long stamp) {
+        return this.getByCodeGSI(code).thenApply(result -> {
+            var id = result == null ? null : result.getId();
+            this.codes.fill(code, id, stamp);
+            return id;
+        });
+    }
+
+    private CompletableFuture<Product> put(Product product, String email, boolean consistent) {
+        var context = RequestContext.executor();
+        return this.read(product.getId(), consistent).thenComposeAsync(current -> {
+            if (current == null)
+                return CompletableFuture.<Product>failedFuture(consistent
+                        ? new CompletionException(new ProductException(ProductError.PRODUCT_NOT_FOUND, product.getId()))
+                        : new StaleProductException(null));
+            product.setVersion(current.getVersion() == null ? 1L : current.getVersion() + 1);
+            var items = new ArrayList<TransactWriteItem>();
+            items.add(this.write(product, current));
+            if (!Objects.equals(current.getCode(), product.getCode()))
+                items.add(this.reservations.release(current.getCode(), product.getId()));
+            var reservation = items.size();
+            items.add(this.reservations.reserve(product)); // Same code too, the copy in it is refreshed
+            items.add(this.outbox.append(product, EventType.PRODUCT_UPDATED, email));
+            items.add(this.outbox.change(product)); // Other tasks drop their snapshot copy
+            var request = TransactWriteItemsRequest.builder()
+                    .transactItems(items)
+                    .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                    .build();
+            return this.client.transactWriteItems(request)
+                    .exceptionallyCompose(e -> CompletableFuture.failedFuture(cancelled(e, reservation)))
+                    .thenApply(ignored -> {
+                        this.changed(product, EventType.PRODUCT_UPDATED, current.getCode());
+                        return product;
+                    });
+        }, context);
+    }
+
+    private CompletableFuture<Product> delete(String id, String email, boolean consistent) {
+        var context = RequestContext.executor();
+        return this.read(id, consistent).thenComposeAsync(current -> {
+            if (current == null)
+                return consistent
+                        ? CompletableFuture.<Product>completedFuture(null)
+                        : CompletableFuture.<Product>failedFuture(new StaleProductException(null));
+            var remove = TransactWriteItem.builder()
+                    .delete(Delete.builder()
+                            .tableName(this.products.tableName())
+                            .key(Map.of("id", CodeReservations.s(id)))
+                            .conditionExpression("#code = :previous")
+                            .expressionAttributeNames(Map.of("#code", "code"))
+                            .expressionAttributeValues(Map.of(":previous", CodeReservations.s(current.getCode())))
+                            .build())
+                    .build();
+            var request = TransactWriteItemsRequest.builder()
+                    .transactItems(
+                            remove,
+                            this.reservations.release(current.getCode(), id),
+                            this.outbox.append(current, EventType.PRODUCT_DELETED, email),
+                            this.outbox.change(current))
+                    .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                    .build();
+            return this.client.transactWriteItems(request)
+                    .exceptionallyCompose(e -> CompletableFuture.failedFuture(cancelled(e, -1)))
+                    .thenApply(ignored -> current);
+        }, context);
+    }
+
+    // Runs a write against the cached product first, then against a fresh read of the table
+    // if the cached one turned out to be stale or missing
+    private <T> CompletableFuture<T> retryStale(String id, Function<Boolean, CompletableFuture<T>> write) {
+        var context = RequestContext.executor();
+        return write.apply(false)
+                .exceptionallyComposeAsync(e -> isStale(e) ? write.apply(true) : CompletableFuture.<T>failedFuture(e), context)
+                .exceptionallyCompose(e -> CompletableFuture.<T>failedFuture(isStale(e) // Changed again in between
+                        ? new CompletionException(new ProductException(ProductError.PRODUCT_NOT_FOUND, id))
+                        : e));
+    }
+
+    // Holder of every code of the products that is already reserved, by code
+    // A code whose reservation could not be read counts as free, the claim is what decides
+    private CompletableFuture<Map<String, String>> holders(List<Product> products) {
+        var keys = products.stream().map(product -> this.reservations.key(product.getCode())).toList();
+        var request = KeysAndAttributes.builder()
+                .keys(keys)
+                .consistentRead(true)
+                .projectionExpression("id, productId");
+        return this.batchGetItems(request, 0).handle((read, e) -> {
+            if (e != null) {
+                LOG.error("BatchGetItem - {} code reservations - failed", keys.size(), e);
+                return Map.of();
+            }
+            return read.items().stream().collect(Collectors.toMap(
+                    item -> item.get("id").s().substring(CodeReservations.PREFIX.length()),
+                    item -> item.get("productId").s()));
+        });
+    }
+
+    // Free codes in one transaction, it fails as a whole when one of them was taken since it was read
+    private CompletableFuture<Void> claimAll(List<Product> products, CodeClaims claims) {
+        if (products.isEmpty()) return CompletableFuture.completedFuture(null);
+        var context = RequestContext.executor();
+        var request = TransactWriteItemsRequest.builder()
+                .transactItems(products.stream().map(this.reservations::reserve).toList())
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
                 .build();
-        return this.products.updateItem(request);
+        return this.client.transactWriteItems(request).handleAsync((ignored, e) -> {
+            if (e == null) {
+                products.forEach(product -> claims.claimed().add(product.getId()));
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            if (!(cause(e) instanceof TransactionCanceledException canceled)) {
+                LOG.error("TransactWriteItems - {} code claims - failed", products.size(), e);
+                products.forEach(product -> claims.failed().add(product.getId()));
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            // The holders of the taken codes come back in the reasons, the others are claimed one at a time
+            var rest = new ArrayList<Product>();
+            for (var i = 0; i < products.size(); i++) {
+                var holder = CodeReservations.failed(canceled, i) ? CodeReservations.holder(canceled, i) : null;
+                if (holder != null) claims.conflicts().put(products.get(i).getId(), holder);
+                else rest.add(products.get(i));
+            }
+            LOG.info("TransactWriteItems - {} code claims - {} taken meanwhile", products.size(), products.size() - rest.size());
+            return CompletableFuture.allOf(rest.stream()
+                    .map(product -> this.claim(product, claims))
+                    .toArray(CompletableFuture[]::new));
+        }, context).thenCompose(Function.identity());
+    }
+
+    // Conditional put of one reservation, the holder of a taken code is read back
+    private CompletableFuture<Void> claim(Product product, CodeClaims claims) {
+        var context = RequestContext.executor();
+        return this.client.putItem(PutItemRequest.builder()
+                        .tableName(this.products.tableName())
+                        .item(this.reservations.item(product))
+                        .conditionExpression("attribute_not_exists(id)")
+                        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                        .build())
+                .handleAsync((ignored, e) -> {
+                    if (e == null) {
+                        claims.claimed().add(product.getId());
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    if (!(cause(e) instanceof ConditionalCheckFailedException)) {
+                        LOG.error("PutItem - code {} - claim failed", product.getCode(), e);
+                        claims.failed().add(product.getId());
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    return this.getHolder(product.getCode()).handle((holder, f) -> {
+                        if (f == null && holder != null) claims.conflicts().put(product.getId(), holder);
+                        else claims.failed().add(product.getId());
+                        return (Void) null;
+                    });
+                }, context)
+                .thenCompose(Function.identity());
     }
 
-    public CompletableFuture<Product> delete(String id) {
-        var key = Key.builder()
-                .partitionValue(id)
+    // From the cache, or a strongly consistent read of the table
+    private CompletableFuture<Product> read(String id, boolean consistent) {
+        if (!consistent) return this.getById(id);
+        return this.products.getItem(GetItemEnhancedRequest.builder()
+                .key(Key.builder().partitionValue(id).build())
+                .consistentRead(true)
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .build());
+    }
+
+    private CompletableFuture<String> getHolder(String code) {
+        var request = GetItemRequest.builder()
+                .tableName(this.products.tableName())
+                .key(this.reservations.key(code))
+                .consistentRead(true)
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
                 .build();
-        return this.products.deleteItem(key);
+        return this.client.getItem(request).thenApply(response -> response.hasItem()
+                ? response.item().get("productId").s()
+                : null);
     }
 
-    public CompletableFuture<Product> getByCode(String code) {
-        var result = this.getByCodeGSI(code).join();
-        if (result == null)
-            return CompletableFuture.supplyAsync(() -> null);
-        return this.getById(result.getId());
+    // Put of the whole product
+    // A new product must not exist yet, an existing one must still be the one it was read as
+    private TransactWriteItem write(Product product, @Nullable Product current) {
+        var put = Put.builder()
+                .tableName(this.products.tableName())
+                .item(this.products.tableSchema().itemToMap(product, true));
+        if (current == null)
+            put.conditionExpression("attribute_not_exists(id)");
+        else if (current.getVersion() == null) // Never written since versions were added
+            put.conditionExpression("#code = :previous AND attribute_not_exists(#version)")
+                    .expressionAttributeNames(Map.of("#code", "code", "#version", "version"))
+                    .expressionAttributeValues(Map.of(":previous", CodeReservations.s(current.getCode())));
+        else
+            put.conditionExpression("#code = :previous AND #version = :version")
+                    .expressionAttributeNames(Map.of("#code", "code", "#version", "version"))
+                    .expressionAttributeValues(Map.of(
+                            ":previous", CodeReservations.s(current.getCode()),
+                            ":version", CodeReservations.n(current.getVersion())));
+        return TransactWriteItem.builder().put(put.build()).build();
+    }
+
+    // Maps a cancelled transaction to the product error behind it
+    // Item 0 is always the product, reservation is the index of the code being taken
+    private static CompletionException cancelled(Throwable e, int reservation) {
+        if (cause(e) instanceof TransactionCanceledException canceled) {
+            if (CodeReservations.failed(canceled, 0))
+                return new CompletionException(new StaleProductException(canceled));
+            if (reservation > 0 && CodeReservations.failed(canceled, reservation))
+                return conflict(CodeReservations.holder(canceled, reservation));
+        }
+        return e instanceof CompletionException completion ? completion : new CompletionException(e);
+    }
+
+    private static CompletionException conflict(@Nullable String holder) {
+        return new CompletionException(new ProductException(ProductError.PRODUCT_CODE_CONFLICT, holder));
+    }
+
+    // The product condition failed on a cached read, worth one more try from the table
+    private static boolean isStale(Throwable e) {
+        return cause(e) instanceof StaleProductException;
+    }
+
+    // Futures of the SDK fail with the exception itself or wrapped in a CompletionException
+    static Throwable cause(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    private CompletableFuture<BatchRead> batchGet(List<Map<String, AttributeValue>> keys, int attempt) {
+        return this.batchGetItems(KeysAndAttributes.builder().keys(keys), attempt).thenApply(read -> new BatchRead(
+                read.items().stream().map(this.products.tableSchema()::mapToItem).toList(),
+                read.unprocessed().stream().map(key -> key.get("id").s()).toList()));
+    }
+
+    // Retries the unprocessed keys with backoff, up to Backoff.MAX_ATTEMPTS
+    // Keys still unprocessed after that are given back
+    private CompletableFuture<BatchItems> batchGetItems(KeysAndAttributes.Builder keys, int attempt) {
+        var context = RequestContext.executor();
+        var request = BatchGetItemRequest.builder()
+                .requestItems(Map.of(this.products.tableName(), keys.build()))
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .build();
+        return this.client.batchGetItem(request).thenCompose(response -> {
+            var items = response.responses().getOrDefault(this.products.tableName(), List.of());
+            var unprocessed = response.unprocessedKeys().get(this.products.tableName());
+            if (unprocessed == null || unprocessed.keys().isEmpty())
+                return CompletableFuture.completedFuture(new BatchItems(items, List.of()));
+            if (attempt + 1 >= Backoff.MAX_ATTEMPTS) {
+                LOG.error("BatchGetItem - {} unprocessed keys left", unprocessed.keys().size());
+                return CompletableFuture.completedFuture(new BatchItems(items, unprocessed.keys()));
+            }
+            LOG.info("BatchGetItem - {} unprocessed keys - attempt {}", unprocessed.keys().size(), attempt + 1);
+            return Backoff.after(attempt)
+                    .thenComposeAsync(ignored -> this.batchGetItems(unprocessed.toBuilder(), attempt + 1), context)
+                    .thenApply(rest -> {
+                        var all = new ArrayList<>(items);
+                        all.addAll(rest.items());
+                        return new BatchItems(all, rest.unprocessed());
+                    });
+        });
+    }
+
+    private Map<String, AttributeValue> createExclusiveStartKey(String startedAfterExclusive) {
+        return startedAfterExclusive == null ? null :
+            Map.of("id", AttributeValue.builder().s(startedAfterExclusive).build());
+    }
+
+    private void changed(Product product, EventType type, @Nullable String previousCode) {
+        this.events.publishEvent(new ProductChangedEvent(product, type, previousCode));
     }
 
     private CompletableFuture<Product> getByCodeGSI(String code) {
         var results = new ArrayList<Product>(); // 1 product
-        this.products
+        var pagesCount = 1; // A full page of 1 item has a last evaluated key, no need to ask for the next one
+        return this.products
                 .index("IndexOnCode")
                 .query(QueryEnhancedRequest.builder()
                         .limit(1) // Take 1 from the results
                         .queryConditional(QueryConditional.keyEqualTo(Key.builder()
                                 .partitionValue(code)
                                 .build()))
+                        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
                         .build())
+                .limit(pagesCount)
                 .subscribe(page -> results.addAll(page.items()))
-                .join();
+                .thenApply(ignored -> results.isEmpty() ? null : results.getFirst());
+    }
+
+    private record BatchRead(List<Product> items, List<String> unprocessed) {
+    }
 
-        if (results.isEmpty())
-            return CompletableFuture.supplyAsync(() -> null);
-        return CompletableFuture.supplyAsync(results::getFirst);
+    private record BatchItems(List<Map<String, AttributeValue>> items, List<Map<String, AttributeValue>> unprocessed) {
     }
 }
@@ -0,0 +1,102 @@
+package com.shop.product.repository;
+
+import com.shop.product.model.Product;
+import com.shop.product.model.ProductCode;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+// Full table reads for exports and reindexing
+// Splits the table into segments scanned in parallel, each one its own stream of pages
+// The low level client is used to get the consumed capacity of every page
+@Repository
+public class ProductScanner {
+    private static final Logger LOG = LogManager.getLogger(ProductScanner.class);
+    private final DynamoDbAsyncClient client;
+    private final String table;
+    private final TokenBucket capacity; // Shared by all running scans
+    private final int maxSegments;
+
+    public ProductScanner(
+            DynamoDbAsyncClient client,
+            @Value("${aws.product.table.name}") String table,
+            @Value("${product.scan.rcu.per.second}") double rcuPerSecond,
+            @Value("${product.scan.max.segments}") int maxSegments) {
+        this.client = client;
+        this.table = table;
+        this.capacity = new TokenBucket(rcuPerSecond);
+        this.maxSegments = maxSegments;
+    }
+
+    // The sink gets one page at a time, never concurrently, in no particular order across segments
+    public CompletableFuture<Void> scan(int segments, Consumer<List<Product>> sink) {
+        return this.scan(segments, CodeReservations.PRODUCTS_ONLY, TableSchemas.PRODUCT, sink);
+    }
+
+    // The code reservations alone, same paging and capacity as the products
+    public CompletableFuture<Void> scanReservations(int segments, Consumer<List<ProductCode>> sink) {
+        return this.scan(segments, CodeReservations.RESERVATIONS_ONLY, TableSchemas.PRODUCT_CODE, sink);
+    }
+
+    private <T> CompletableFuture<Void> scan(int segments, String filter, TableSchema<T> schema, Consumer<List<T>> sink) {
+        var total = Math.max(1, Math.min(segments, this.maxSegments));
+        LOG.info("Scan - {} segments", total);
+        Consumer<List<T>> merged = page -> {
+            synchronized (sink) {
+                sink.accept(page);
+            }
+        };
+        var scans = IntStream.range(0, total)
+                .mapToObj(segment -> this.scanSegment(segment, total, null, filter, schema, merged))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(scans);
+    }
+
+    private <T> CompletableFuture<Void> scanSegment(
+            int segment,
+            int total,
+            Map<String, AttributeValue> startKey,
+            String filter,
+            TableSchema<T> schema,
+            Consumer<List<T>> sink) {
+        var request = ScanRequest.builder()
+                .tableName(this.table)
+                .segment(segment)
+                .totalSegments(total)
+                .exclusiveStartKey(startKey)
+                .filterExpression(filter)
+                .expressionAttributeValues(CodeReservations.PRODUCTS_ONLY_VALUES)
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .build();
+        var delayed = CompletableFuture.delayedExecutor(this.capacity.delay(), TimeUnit.NANOSECONDS);
+        return CompletableFuture.supplyAsync(() -> request, delayed)
+                .thenCompose(this.client::scan)
+                .thenCompose(response -> {
+                    this.consume(response);
+                    sink.accept(response.items().stream().map(schema::mapToItem).toList());
+                    if (!response.hasLastEvaluatedKey() || response.lastEvaluatedKey().isEmpty())
+                        return CompletableFuture.completedFuture(null);
+                    return this.scanSegment(segment, total, response.lastEvaluatedKey(), filter, schema, sink);
+                });
+    }
+
+    private void consume(ScanResponse response) {
+        var consumed = response.consumedCapacity();
+        if (consumed != null && consumed.capacityUnits() != null)
+            this.capacity.consume(consumed.capacityUnits());
+    }
+}
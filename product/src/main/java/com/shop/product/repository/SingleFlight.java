@@ -0,0 +1,53 @@
+package com.shop.product.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// Concurrent lookups of the same key share the read that is already in flight
+// A flight is keyed by the version of the key in the cache too
+// A lookup after a write of the key never joins a read started before it, writes of other keys do not split flights
+// product.reads{lookup, result=loaded|coalesced} and product.reads.inflight{lookup}
+final class SingleFlight<V> {
+    private final Map<Flight, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+    private final Counter loaded;
+    private final Counter coalesced;
+
+    SingleFlight(MeterRegistry registry, String lookup) {
+        this.loaded = registry.counter("product.reads", "lookup", lookup, "result", "loaded");
+        this.coalesced = registry.counter("product.reads", "lookup", lookup, "result", "coalesced");
+        registry.gaugeMapSize("product.reads.inflight", Tags.of("lookup", lookup), this.flights);
+    }
+
+    // Every caller gets its own copy, cancelling one does not fail the others
+    CompletableFuture<V> get(String key, long version, Supplier<CompletableFuture<V>> load) {
+        var flight = new Flight(key, version);
+        var mine = new CompletableFuture<V>();
+        var shared = this.flights.putIfAbsent(flight, mine);
+        if (shared != null) {
+            this.coalesced.increment();
+            return shared.copy();
+        }
+        this.loaded.increment();
+        CompletableFuture<V> read;
+        try {
+            read = load.get();
+        } catch (RuntimeException e) {
+            read = CompletableFuture.failedFuture(e);
+        }
+        read.whenComplete((value, e) -> {
+            this.flights.remove(flight, mine); // Before completing, callers from now on start a new read
+            if (e != null) mine.completeExceptionally(e);
+            else mine.complete(value);
+        });
+        return mine.copy();
+    }
+
+    private record Flight(String key, long version) {
+    }
+}
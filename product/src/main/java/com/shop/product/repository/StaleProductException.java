@@ -0,0 +1,8 @@
+package com.shop.product.repository;
+
+// A write was conditioned on a product read that no longer matches the table
+class StaleProductException extends RuntimeException {
+    StaleProductException(Throwable cause) {
+        super(cause);
+    }
+}
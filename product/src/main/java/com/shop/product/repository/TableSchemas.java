@@ -0,0 +1,108 @@
+package com.shop.product.repository;
+
+import com.shop.product.model.OutboxEvent;
+import com.shop.product.model.Product;
+import com.shop.product.model.ProductCode;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.StaticTableSchema;
+
+import static software.amazon.awssdk.enhanced.dynamodb.mapper.StaticAttributeTags.primaryPartitionKey;
+import static software.amazon.awssdk.enhanced.dynamodb.mapper.StaticAttributeTags.primarySortKey;
+import static software.amazon.awssdk.enhanced.dynamodb.mapper.StaticAttributeTags.secondaryPartitionKey;
+
+// Item mappings written out instead of TableSchema.fromBean, which introspects the beans and
+// generates accessors with LambdaMetafactory when first used, slow at startup and not possible in a native image
+// Attribute names are the ones fromBean derives from the getters, items written with either read the same
+final class TableSchemas {
+    static final TableSchema<Product> PRODUCT = StaticTableSchema.builder(Product.class)
+            .newItemSupplier(Product::new)
+            .addAttribute(String.class, a -> a.name("id")
+                    .getter(Product::getId)
+                    .setter(Product::setId)
+                    .tags(primaryPartitionKey()))
+            .addAttribute(String.class, a -> a.name("code")
+                    .getter(Product::getCode)
+                    .setter(Product::setCode)
+                    .tags(secondaryPartitionKey("IndexOnCode")))
+            .addAttribute(String.class, a -> a.name("productName")
+                    .getter(Product::getProductName)
+                    .setter(Product::setProductName))
+            .addAttribute(String.class, a -> a.name("productUrl")
+                    .getter(Product::getProductUrl)
+                    .setter(Product::setProductUrl))
+            .addAttribute(String.class, a -> a.name("model")
+                    .getter(Product::getModel)
+                    .setter(Product::setModel))
+            .addAttribute(Float.class, a -> a.name("price")
+                    .getter(Product::getPrice)
+                    .setter(Product::setPrice))
+            .addAttribute(Long.class, a -> a.name("version")
+                    .getter(Product::getVersion)
+                    .setter(Product::setVersion))
+            .build();
+
+    static final TableSchema<ProductCode> PRODUCT_CODE = StaticTableSchema.builder(ProductCode.class)
+            .newItemSupplier(ProductCode::new)
+            .addAttribute(String.class, a -> a.name("id")
+                    .getter(ProductCode::getId)
+                    .setter(ProductCode::setId)
+                    .tags(primaryPartitionKey()))
+            .addAttribute(String.class, a -> a.name("productId")
+                    .getter(ProductCode::getProductId)
+                    .setter(ProductCode::setProductId))
+            .addAttribute(String.class, a -> a.name("productName")
+                    .getter(ProductCode::getProductName)
+                    .setter(ProductCode::setProductName))
+            .addAttribute(String.class, a -> a.name("productUrl")
+                    .getter(ProductCode::getProductUrl)
+                    .setter(ProductCode::setProductUrl))
+            .addAttribute(String.class, a -> a.name("model")
+                    .getter(ProductCode::getModel)
+                    .setter(ProductCode::setModel))
+            .addAttribute(Float.class, a -> a.name("price")
+                    .getter(ProductCode::getPrice)
+                    .setter(ProductCode::setPrice))
+            .addAttribute(Long.class, a -> a.name("version")
+                    .getter(ProductCode::getVersion)
+                    .setter(ProductCode::setVersion))
+            .addAttribute(Long.class, a -> a.name("reservedAt")
+                    .getter(ProductCode::getReservedAt)
+                    .setter(ProductCode::setReservedAt))
+            .build();
+
+    static final TableSchema<OutboxEvent> OUTBOX_EVENT = StaticTableSchema.builder(OutboxEvent.class)
+            .newItemSupplier(OutboxEvent::new)
+            .addAttribute(String.class, a -> a.name("shard")
+                    .getter(OutboxEvent::getShard)
+                    .setter(OutboxEvent::setShard)
+                    .tags(primaryPartitionKey()))
+            .addAttribute(String.class, a -> a.name("id")
+                    .getter(OutboxEvent::getId)
+                    .setter(OutboxEvent::setId)
+                    .tags(primarySortKey()))
+            .addAttribute(String.class, a -> a.name("productId")
+                    .getter(OutboxEvent::getProductId)
+                    .setter(OutboxEvent::setProductId))
+            .addAttribute(String.class, a -> a.name("eventType")
+                    .getter(OutboxEvent::getEventType)
+                    .setter(OutboxEvent::setEventType))
+            .addAttribute(String.class, a -> a.name("message")
+                    .getter(OutboxEvent::getMessage)
+                    .setter(OutboxEvent::setMessage))
+            .addAttribute(String.class, a -> a.name("contentType")
+                    .getter(OutboxEvent::getContentType)
+                    .setter(OutboxEvent::setContentType))
+            .addAttribute(String.class, a -> a.name("requestId")
+                    .getter(OutboxEvent::getRequestId)
+                    .setter(OutboxEvent::setRequestId))
+            .addAttribute(String.class, a -> a.name("traceId")
+                    .getter(OutboxEvent::getTraceId)
+                    .setter(OutboxEvent::setTraceId))
+            .addAttribute(Long.class, a -> a.name("createdAt")
+                    .getter(OutboxEvent::getCreatedAt)
+                    .setter(OutboxEvent::setCreatedAt))
+            .build();
+
+    private TableSchemas() {
+    }
+}
@@ -0,0 +1,35 @@
+package com.shop.product.repository;
+
+// Read capacity budget shared by the scan segments
+// Capacity is paid after a page comes back, so the balance can go below zero
+// and the next page waits until it is refilled
+final class TokenBucket {
+    private final double ratePerNano;
+    private final double capacity;
+    private double tokens;
+    private long refilledAt;
+
+    TokenBucket(double perSecond) {
+        this.ratePerNano = perSecond / 1_000_000_000d;
+        this.capacity = perSecond; // Up to one second of burst
+        this.tokens = perSecond;
+        this.refilledAt = System.nanoTime();
+    }
+
+    // Nanoseconds to wait before the next request can go out
+    synchronized long delay() {
+        this.refill();
+        return this.tokens >= 0 ? 0 : (long) Math.ceil(-this.tokens / this.ratePerNano);
+    }
+
+    synchronized void consume(double units) {
+        this.refill();
+        this.tokens -= units;
+    }
+
+    private void refill() {
+        var now = System.nanoTime();
+        this.tokens = Math.min(this.capacity, this.tokens + (now - this.refilledAt) * this.ratePerNano);
+        this.refilledAt = now;
+    }
+}
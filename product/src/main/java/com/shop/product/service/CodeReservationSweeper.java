@@ -0,0 +1,54 @@
+package com.shop.product.service;
+
+import com.shop.product.repository.ProductRepository;
+import com.shop.product.repository.ProductScanner;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Removes the code reservations of products that were never written
+// An import claims the codes before it writes the products, a task that stops in between leaves them behind
+// Every task sweeps, the deletes are conditional on the holder so concurrent sweeps are harmless
+@Component
+@ConditionalOnProperty(name = "product.code.sweeper.enabled", havingValue = "true")
+public class CodeReservationSweeper {
+    private static final Logger LOG = LogManager.getLogger(CodeReservationSweeper.class);
+    private final ProductRepository repository;
+    private final ProductScanner scanner;
+    private final int segments;
+    private final Duration grace; // Longer than an import takes between its claims and its writes
+
+    public CodeReservationSweeper(
+            ProductRepository repository,
+            ProductScanner scanner,
+            @Value("${product.scan.segments}") int segments,
+            @Value("${product.code.sweeper.grace.seconds}") long grace) {
+        this.repository = repository;
+        this.scanner = scanner;
+        this.segments = segments;
+        this.grace = Duration.ofSeconds(grace);
+    }
+
+    @Scheduled(initialDelayString = "${product.code.sweeper.delay.ms}", fixedDelayString = "${product.code.sweeper.delay.ms}")
+    public void sweep() {
+        var released = new AtomicInteger();
+        try {
+            this.scanner.scanReservations(this.segments, page -> {
+                try {
+                    released.addAndGet(this.repository.releaseOrphans(page, this.grace).join());
+                } catch (Exception e) {
+                    LOG.error("Code sweep - page skipped", e); // Its reservations are looked at on the next run
+                }
+            }).join();
+            LOG.info("Code sweep - done - {} released", released.get());
+        } catch (Exception e) {
+            LOG.error("Code sweep - failed - {} released", released.get(), e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.shop.product.service;
+
+import com.amazonaws.xray.AWSXRay;
+import com.shop.product.dto.ProductFailureEventDto;
+import com.shop.product.exception.ProductError;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Nullable;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// Failure events off the error path
+// Failures are queued without waiting on SNS and published every window
+// Identical failures (same error and product id) within a window go out as one event with a count
+@Service
+public class FailurePublisher {
+    private static final Logger LOG = LogManager.getLogger(FailurePublisher.class);
+
+    private record Key(ProductError error, @Nullable String id) {
+    }
+
+    // Request and trace ids of the first failure of the window
+    private record Failure(int count, @Nullable String requestId, @Nullable String traceId) {
+        Failure merge(Failure other) {
+            return new Failure(this.count + other.count, this.requestId, this.traceId);
+        }
+    }
+
+    private final SnsPublisher publisher;
+    private final int capacity;
+    private final ConcurrentHashMap<Key, Failure> queue = new ConcurrentHashMap<>();
+    private final Counter dropped;
+
+    public FailurePublisher(
+            SnsPublisher publisher,
+            MeterRegistry registry,
+            @Value("${product.failure.queue.capacity}") int capacity) {
+        this.publisher = publisher;
+        this.capacity = capacity;
+        registry.gauge("product.failure.queue.depth", this.queue, ConcurrentHashMap::size);
+        this.dropped = registry.counter("product.failure.dropped");
+    }
+
+    // Never blocks, a new failure is dropped when the queue is full
+    public void publish(ProductError error, @Nullable String id) {
+        var key = new Key(error, id);
+        if (!this.queue.containsKey(key) && this.queue.size() >= this.capacity) {
+            this.dropped.increment();
+            return;
+        }
+        var traceId = AWSXRay.getCurrentSegmentOptional()
+                .map(segment -> segment.getTraceId().toString())
+                .orElse(null);
+        this.queue.merge(key, new Failure(1, ThreadContext.get("requestId"), traceId), Failure::merge);
+    }
+
+    @Scheduled(fixedDelayString = "${product.failure.window.ms}")
+    public void flush() {
+        for (var key : this.queue.keySet()) {
+            var failure = this.queue.remove(key); // Failures after this open the next window
+            if (failure == null) continue;
+            var dto = new ProductFailureEventDto(
+                    key.error().getStatus().value(),
+                    key.error().getMessage(),
+                    "xrmeng720@gmail.com",
+                    key.id(),
+                    failure.count());
+            this.publisher.publishFailure(dto, failure.requestId(), failure.traceId()).whenComplete((response, e) -> {
+                if (e != null) LOG.error("Failure event - {} - {} - not published", key.error(), key.id(), e);
+                else LOG.info("Failure event - {} - {} - {} merged - {}", key.error(), key.id(), failure.count(), response.messageId());
+            });
+        }
+    }
+
+    // Sends what the last window collected
+    @PreDestroy
+    public void close() {
+        this.flush();
+    }
+}
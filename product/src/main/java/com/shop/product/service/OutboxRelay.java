@@ -0,0 +1,119 @@
+package com.shop.product.service;
+
+import com.shop.product.model.OutboxEvent;
+import com.shop.product.repository.ProductOutbox;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Drains the outbox to SNS in PublishBatch calls
+// An event is deleted only after SNS accepted it, so it is published at least once
+// A batch holds one event per product and a failed entry stops the shard, so a product's events go out in order
+@Service
+public class OutboxRelay {
+    private static final Logger LOG = LogManager.getLogger(OutboxRelay.class);
+    private static final int BATCH_SIZE = 10; // PublishBatch limit
+    private static final int PAGE_SIZE = 100;
+    private static final int MAX_BATCHES = 50; // Per shard and run, well within the lease
+    private final ProductOutbox outbox;
+    private final SnsPublisher publisher;
+    private final Duration lease;
+    private final String owner = UUID.randomUUID().toString(); // This task
+    private final AtomicLong oldest = new AtomicLong(); // createdAt of the oldest event seen by the last run
+    private final Timer lag;
+    private final Counter published;
+    private final Counter failed;
+
+    public OutboxRelay(
+            ProductOutbox outbox,
+            SnsPublisher publisher,
+            MeterRegistry registry,
+            @Value("${product.outbox.lease.seconds}") long lease) {
+        this.outbox = outbox;
+        this.publisher = publisher;
+        this.lease = Duration.ofSeconds(lease);
+        // Write to publish
+        this.lag = Timer.builder("product.outbox.relay.lag")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        this.published = registry.counter("product.outbox.relay.published");
+        this.failed = registry.counter("product.outbox.relay.failed");
+        // Age of the oldest event still waiting, grows when the relay falls behind
+        Gauge.builder("product.outbox.relay.oldest", this.oldest, oldest -> oldest.get() == 0
+                        ? 0
+                        : (Instant.now().toEpochMilli() - oldest.get()) / 1000.0)
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${product.outbox.relay.delay.ms}")
+    public void relay() {
+        var oldest = 0L;
+        for (var shard = 0; shard < this.outbox.shards(); shard++) {
+            try {
+                if (!this.outbox.lease(shard, this.owner, this.lease).join()) continue; // Another task drains it
+                var first = this.drain(shard);
+                if (first != 0 && (oldest == 0 || first < oldest)) oldest = first;
+            } catch (Exception e) {
+                LOG.error("Outbox - shard {} - relay failed", shard, e);
+            }
+        }
+        this.oldest.set(oldest);
+    }
+
+    // createdAt of the oldest event left in the shard, 0 when drained
+    private long drain(int shard) {
+        for (var i = 0; i < MAX_BATCHES; i++) {
+            var pending = this.outbox.pending(shard, PAGE_SIZE).join();
+            if (pending.isEmpty()) return 0;
+            var batch = batch(pending);
+            var messages = this.publisher.relay(batch).join(); // outbox id -> message id
+            var sent = batch.stream().filter(event -> messages.containsKey(event.getId())).toList();
+            this.outbox.remove(sent).join();
+
+            var now = Instant.now().toEpochMilli();
+            sent.forEach(event -> {
+                this.lag.record(now - event.getCreatedAt(), TimeUnit.MILLISECONDS);
+                LOG.info("Outbox - {} - published - {}", event.getId(), messages.get(event.getId()));
+            });
+            this.published.increment(sent.size());
+            if (sent.size() < batch.size()) {
+                this.failed.increment(batch.size() - sent.size());
+                LOG.error("Outbox - shard {} - {} events not published", shard, batch.size() - sent.size());
+                return batch.stream() // Retried on the next run, in the same order
+                        .filter(event -> !messages.containsKey(event.getId()))
+                        .findFirst()
+                        .orElseThrow()
+                        .getCreatedAt();
+            }
+        }
+        var left = this.outbox.pending(shard, 1).join();
+        return left.isEmpty() ? 0 : left.getFirst().getCreatedAt();
+    }
+
+    // Oldest events first, up to the first one whose product is already in the batch
+    private static List<OutboxEvent> batch(List<OutboxEvent> pending) {
+        var batch = new ArrayList<OutboxEvent>();
+        var products = new HashSet<String>();
+        for (var event : pending) {
+            if (batch.size() == BATCH_SIZE || !products.add(event.getProductId())) break;
+            batch.add(event);
+        }
+        return batch;
+    }
+}
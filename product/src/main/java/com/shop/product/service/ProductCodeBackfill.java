@@ -0,0 +1,48 @@
+package com.shop.product.service;
+
+import com.shop.product.repository.ProductRepository;
+import com.shop.product.repository.ProductScanner;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// One-off reservation of the codes of products written before code reservations existed
+// Runs at startup with product.code.backfill.enabled=true, safe to run more than once
+@Component
+@ConditionalOnProperty(name = "product.code.backfill.enabled", havingValue = "true")
+public class ProductCodeBackfill implements ApplicationRunner {
+    private static final Logger LOG = LogManager.getLogger(ProductCodeBackfill.class);
+    private final ProductRepository repository;
+    private final ProductScanner scanner;
+    private final int segments;
+
+    public ProductCodeBackfill(
+            ProductRepository repository,
+            ProductScanner scanner,
+            @Value("${product.scan.segments}") int segments) {
+        this.repository = repository;
+        this.scanner = scanner;
+        this.segments = segments;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        var duplicates = new AtomicInteger();
+        this.scanner.scan(this.segments, page -> {
+            var claims = this.repository.reserveAll(page).join();
+            claims.conflicts().forEach((id, holder) -> {
+                if (id.equals(holder)) return; // Already reserved
+                duplicates.incrementAndGet();
+                LOG.error("Code backfill - product {} shares its code with {}", id, holder);
+            });
+            claims.failed().forEach(id -> LOG.error("Code backfill - product {} not reserved, run it again", id));
+        }).join();
+        LOG.info("Code backfill - done - {} duplicates", duplicates.get());
+    }
+}
@@ -0,0 +1,99 @@
+package com.shop.product.service;
+
+import com.shop.product.dto.ProductDto;
+import com.shop.product.dto.ProductImportItemDto;
+import com.shop.product.dto.ProductImportResultDto;
+import com.shop.product.dto.ProductImportStatus;
+import com.shop.product.interceptor.RequestContext;
+import com.shop.product.model.Product;
+import com.shop.product.repository.CodeClaims;
+import com.shop.product.repository.ProductIds;
+import com.shop.product.repository.ProductRepository;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Supplier catalog onboarding in one request instead of one POST per product
+@Service
+public class ProductImporter {
+    private static final Logger LOG = LogManager.getLogger(ProductImporter.class);
+    private final ProductRepository repository;
+
+    public ProductImporter(ProductRepository repository) {
+        this.repository = repository;
+    }
+
+    public CompletableFuture<ProductImportResultDto> importAll(List<ProductDto> dtos, String email) {
+        var context = RequestContext.executor();
+        var products = new ArrayList<Product>();
+        var claimed = new HashMap<String, String>(); // code -> id, first one in the body wins
+        var conflicts = new HashMap<Integer, String>(); // index -> id holding the code
+        var candidates = new ArrayList<Product>();
+        for (var i = 0; i < dtos.size(); i++) {
+            var product = ProductDto.toProduct(dtos.get(i));
+            product.setId(ProductIds.next());
+            product.setVersion(1L); // Before the reservation, which carries a copy of the product
+            products.add(product);
+            var holder = claimed.putIfAbsent(product.getCode(), product.getId());
+            if (holder != null) conflicts.put(i, holder);
+            else candidates.add(product);
+        }
+
+        // Uniqueness of the whole batch at once, by reading the code reservations in bulk and claiming the free codes
+        var claims = new AtomicReference<CodeClaims>();
+        return this.repository.reserveAll(candidates).thenComposeAsync(reserved -> {
+            claims.set(reserved);
+            var accepted = new ArrayList<Product>();
+            for (var i = 0; i < products.size(); i++) {
+                var product = products.get(i);
+                if (reserved.conflicts().containsKey(product.getId()))
+                    conflicts.put(i, reserved.conflicts().get(product.getId()));
+                else if (reserved.claimed().contains(product.getId())) accepted.add(product);
+            }
+            LOG.info("Import - {} products - {} conflicts - {} failed claims",
+                    products.size(), conflicts.size(), reserved.failed().size());
+
+            // The events are committed with the products, the outbox relay publishes them
+            return this.repository.postAll(accepted, email).thenComposeAsync(unwrittenIds -> {
+                var unwritten = accepted.stream().filter(p -> unwrittenIds.contains(p.getId())).toList();
+                var failed = new HashSet<>(unwrittenIds);
+                failed.addAll(reserved.failed());
+                return this.repository.releaseAll(unwritten)
+                        .thenApply(ignored -> result(products, conflicts, failed));
+            }, context);
+        }, context).whenComplete((result, e) -> {
+            // Releases keep the codes of the products that were written
+            if (e == null || claims.get() == null) return;
+            var held = candidates.stream().filter(p -> claims.get().claimed().contains(p.getId())).toList();
+            LOG.error("Import - failed - releasing {} codes", held.size(), e);
+            this.repository.releaseAll(held);
+        });
+    }
+
+    private static ProductImportResultDto result(
+            List<Product> products,
+            Map<Integer, String> conflicts,
+            Set<String> failed) {
+        var items = new ArrayList<ProductImportItemDto>();
+        for (var i = 0; i < products.size(); i++) {
+            var product = products.get(i);
+            if (conflicts.containsKey(i))
+                items.add(new ProductImportItemDto(i, product.getCode(), conflicts.get(i), ProductImportStatus.CODE_CONFLICT));
+            else if (failed.contains(product.getId()))
+                items.add(new ProductImportItemDto(i, product.getCode(), null, ProductImportStatus.FAILED));
+            else
+                items.add(new ProductImportItemDto(i, product.getCode(), product.getId(), ProductImportStatus.CREATED));
+        }
+        var created = (int) items.stream().filter(item -> item.status() == ProductImportStatus.CREATED).count();
+        return new ProductImportResultDto(items, created, items.size() - created);
+    }
+}
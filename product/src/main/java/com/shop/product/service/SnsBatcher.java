@@ -0,0 +1,128 @@
+package com.shop.product.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.awssdk.services.sns.SnsAsyncClient;
+import software.amazon.awssdk.services.sns.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sns.model.PublishBatchRequest;
+import software.amazon.awssdk.services.sns.model.PublishBatchRequestEntry;
+import software.amazon.awssdk.services.sns.model.PublishResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Collects publishes for up to the max delay or 10 messages and sends them in one PublishBatch
+// Every caller gets a response with the message id of its own entry
+final class SnsBatcher implements AutoCloseable {
+    private static final Logger LOG = LogManager.getLogger(SnsBatcher.class);
+    private static final int BATCH_SIZE = 10; // PublishBatch limit
+
+    private record Pending(
+            String message,
+            Map<String, MessageAttributeValue> attributes,
+            CompletableFuture<PublishResponse> response) {
+    }
+
+    private final SnsAsyncClient client;
+    private final String topicArn;
+    private final long maxDelayNanos;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(task -> {
+        var thread = new Thread(task, "sns-batcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private List<Pending> pending = new ArrayList<>(BATCH_SIZE);
+    private ScheduledFuture<?> flush; // Of the batch being collected
+    private boolean closed; // The timer is shut down, publishes are sent on their own
+
+    SnsBatcher(SnsAsyncClient client, String topicArn, Duration maxDelay) {
+        this.client = client;
+        this.topicArn = topicArn;
+        this.maxDelayNanos = maxDelay.toNanos();
+    }
+
+    // The attributes are taken on the calling thread, they carry its request and trace ids
+    CompletableFuture<PublishResponse> publish(String message, Map<String, MessageAttributeValue> attributes) {
+        var response = new CompletableFuture<PublishResponse>();
+        List<Pending> full = null;
+        synchronized (this) {
+            if (this.closed) { // Shutting down, nothing left to flush it later
+                full = List.of(new Pending(message, attributes, response));
+            } else {
+                this.pending.add(new Pending(message, attributes, response));
+                if (this.pending.size() == BATCH_SIZE)
+                    full = this.drain();
+                else if (this.pending.size() == 1) // First of a batch, sent at the latest after the max delay
+                    this.flush = this.timer.schedule(this::flush, this.maxDelayNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) this.send(full);
+        return response;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+        }
+        this.timer.shutdownNow();
+        this.flush();
+    }
+
+    private void flush() {
+        List<Pending> batch;
+        synchronized (this) {
+            if (this.pending.isEmpty()) return;
+            batch = this.drain();
+        }
+        this.send(batch);
+    }
+
+    private List<Pending> drain() {
+        var batch = this.pending;
+        this.pending = new ArrayList<>(BATCH_SIZE);
+        if (this.flush != null) this.flush.cancel(false);
+        this.flush = null;
+        return batch;
+    }
+
+    // Entry ids are the positions in the batch
+    private void send(List<Pending> batch) {
+        var entries = new ArrayList<PublishBatchRequestEntry>();
+        for (var i = 0; i < batch.size(); i++)
+            entries.add(PublishBatchRequestEntry.builder()
+                    .id(String.valueOf(i))
+                    .message(batch.get(i).message())
+                    .messageAttributes(batch.get(i).attributes())
+                    .build());
+        var request = PublishBatchRequest.builder()
+                .topicArn(this.topicArn)
+                .publishBatchRequestEntries(entries)
+                .build();
+        this.client.publishBatch(request).whenComplete((response, e) -> {
+            if (e != null) {
+                LOG.error("PublishBatch - {} entries - failed", batch.size(), e);
+                batch.forEach(pending -> pending.response().completeExceptionally(e));
+                return;
+            }
+            response.successful().forEach(entry -> batch.get(Integer.parseInt(entry.id())).response()
+                    .complete(PublishResponse.builder()
+                            .messageId(entry.messageId())
+                            .sequenceNumber(entry.sequenceNumber())
+                            .build()));
+            response.failed().forEach(entry -> batch.get(Integer.parseInt(entry.id())).response()
+                    .completeExceptionally(new IllegalStateException(
+                            "PublishBatch - entry failed - " + entry.code() + " - " + entry.message())));
+            // Neither successful nor failed, the caller must not wait for ever
+            batch.forEach(pending -> pending.response().completeExceptionally(
+                    new IllegalStateException("PublishBatch - entry missing from the response")));
+        });
+    }
+}
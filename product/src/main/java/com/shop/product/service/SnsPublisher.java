@@ -2,20 +2,30 @@ package com.shop.product.service;
 
 import com.amazonaws.xray.AWSXRay;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.product.codec.EventEncoder;
 import com.shop.product.dto.EventType;
 import com.shop.product.dto.ProductEventDto;
 import com.shop.product.dto.ProductFailureEventDto;
+import com.shop.product.model.OutboxEvent;
 import com.shop.product.model.Product;
+import jakarta.annotation.Nullable;
+import jakarta.annotation.PreDestroy;
 import org.apache.logging.log4j.ThreadContext;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import software.amazon.awssdk.services.sns.SnsAsyncClient;
 import software.amazon.awssdk.services.sns.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sns.model.PublishBatchRequest;
+import software.amazon.awssdk.services.sns.model.PublishBatchRequestEntry;
 import software.amazon.awssdk.services.sns.model.PublishRequest;
 import software.amazon.awssdk.services.sns.model.PublishResponse;
 import software.amazon.awssdk.services.sns.model.Topic;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
@@ -24,59 +34,134 @@ import java.util.concurrent.CompletableFuture;
 // To be injected in the controllers
 @Service
 public class SnsPublisher {
-    private final ObjectMapper mapper;
+    private final EventEncoder encoder;
     private final SnsAsyncClient client;
     private final Topic topic;
+    @Nullable
+    private final SnsBatcher batcher; // Single events go out in PublishBatch calls when enabled
 
     public SnsPublisher(
-            ObjectMapper mapper, // Converts Java object to JSON
+            EventEncoder encoder, // Converts Java object to JSON or the binary codec
             SnsAsyncClient client,
-            @Qualifier("productSnsTopic") Topic topic) {
-        this.mapper = mapper;
+            @Qualifier("productSnsTopic") Topic topic,
+            @Value("${aws.sns.batch.enabled}") boolean batch,
+            @Value("${aws.sns.batch.max.delay.ms}") long maxDelay) {
+        this.encoder = encoder;
         this.client = client;
         this.topic = topic;
+        this.batcher = batch ? new SnsBatcher(client, topic.topicArn(), Duration.ofMillis(maxDelay)) : null;
     }
 
-    // Controller can await this operation
-    public CompletableFuture<PublishResponse> publish(Product product, EventType eventType, String email) throws JsonProcessingException {
+    // Sends what is still waiting for a batch
+    @PreDestroy
+    public void close() {
+        if (this.batcher != null) this.batcher.close();
+    }
+
+    // Controller can compose this operation, a payload that cannot be written fails the future
+    public CompletableFuture<PublishResponse> publish(Product product, EventType eventType, String email) {
         var dto = new ProductEventDto(
                 product.getId(),
                 product.getCode(),
                 product.getPrice(),
                 email);
-        var jsonStr = this.mapper.writeValueAsString(dto);
-        return this.publish(jsonStr, eventType);
+        try {
+            return this.publish(this.encoder.encode(dto), eventType);
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
     }
 
-    public CompletableFuture<PublishResponse> publishFailure(ProductFailureEventDto dto) throws JsonProcessingException {
-        var jsonStr = this.mapper.writeValueAsString(dto);
-        return this.publish(jsonStr, EventType.PRODUCT_FAILURE);
+    // Outbox events in one PublishBatch, with the request and trace ids of the write that made them
+    // Completes with the message id of every published event by outbox id, failed entries are left out
+    public CompletableFuture<Map<String, String>> relay(List<OutboxEvent> events) {
+        var entries = new ArrayList<PublishBatchRequestEntry>();
+        for (var i = 0; i < events.size(); i++) {
+            var event = events.get(i);
+            var attributes = new HashMap<String, MessageAttributeValue>();
+            attributes.put("eventType", string(event.getEventType()));
+            attributes.put("outboxId", string(event.getId())); // Same on every delivery of the event
+            if (event.getRequestId() != null) attributes.put("requestId", string(event.getRequestId()));
+            if (event.getTraceId() != null) attributes.put("traceId", string(event.getTraceId()));
+            if (event.getContentType() != null) attributes.put("contentType", string(event.getContentType()));
+            entries.add(PublishBatchRequestEntry.builder()
+                    .id(String.valueOf(i)) // Outbox ids have characters entry ids cannot
+                    .message(event.getMessage())
+                    .messageAttributes(attributes)
+                    .build());
+        }
+        return this.client.publishBatch(PublishBatchRequest.builder()
+                        .topicArn(this.topic.topicArn())
+                        .publishBatchRequestEntries(entries)
+                        .build())
+                .thenApply(response -> {
+                    var published = new HashMap<String, String>();
+                    response.successful().forEach(entry ->
+                            published.put(events.get(Integer.parseInt(entry.id())).getId(), entry.messageId()));
+                    return published;
+                });
+    }
+
+    // Published off the request thread, with the ids of the request that failed
+    public CompletableFuture<PublishResponse> publishFailure(
+            ProductFailureEventDto dto,
+            @Nullable String requestId,
+            @Nullable String traceId) {
+        var attributes = new HashMap<String, MessageAttributeValue>();
+        attributes.put("eventType", string(EventType.PRODUCT_FAILURE.name()));
+        if (requestId != null) attributes.put("requestId", string(requestId));
+        if (traceId != null) attributes.put("traceId", string(traceId));
+        attributes.put("contentType", string(this.encoder.contentType()));
+        try {
+            return this.publish(this.encoder.encode(dto), attributes);
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
     }
 
-    // Async client allows for parallelization of the returned completable future
     private CompletableFuture<PublishResponse> publish(String payload, EventType type) {
+        return this.publish(payload, this.attributes(type));
+    }
+
+    // Async client allows for parallelization of the returned completable future
+    private CompletableFuture<PublishResponse> publish(String payload, Map<String, MessageAttributeValue> attributes) {
+        if (this.batcher != null)
+            return this.batcher.publish(payload, attributes);
         return this.client.publish(PublishRequest.builder()
-                        .messageAttributes(Map.of(
-                                "eventType", MessageAttributeValue.builder()
-                                        .dataType("String")
-                                        .stringValue(type.name())
-                                        .build(),
-                                // Only need to use request id to trace the logs generated
-                                // by all the services that have to do with this request
-                                "requestId", MessageAttributeValue.builder()
-                                        .dataType("String")
-                                        .stringValue(ThreadContext.get("requestId"))
-                                        .build(),
-                                // XRay trace id
-                                "traceId", MessageAttributeValue.builder()
-                                        .dataType("String")
-                                        .stringValue(
-                                                Objects.requireNonNull(AWSXRay.getCurrentSegment())
-                                                    .getTraceId()
-                                                    .toString())
-                                        .build()))
+                        .messageAttributes(attributes)
                         .message(payload)
                         .topicArn(this.topic.topicArn())
                 .build());
     }
+
+    private static MessageAttributeValue string(String value) {
+        return MessageAttributeValue.builder()
+                .dataType("String")
+                .stringValue(value)
+                .build();
+    }
+
+    private Map<String, MessageAttributeValue> attributes(EventType type) {
+        return Map.of(
+                "eventType", MessageAttributeValue.builder()
+                        .dataType("String")
+                        .stringValue(type.name())
+                        .build(),
+                // Only need to use request id to trace the logs generated
+                // by all the services that have to do with this request
+                "requestId", MessageAttributeValue.builder()
+                        .dataType("String")
+                        .stringValue(ThreadContext.get("requestId"))
+                        .build(),
+                // XRay trace id
+                "traceId", MessageAttributeValue.builder()
+                        .dataType("String")
+                        .stringValue(
+                                Objects.requireNonNull(AWSXRay.getCurrentSegment())
+                                    .getTraceId()
+                                    .toString())
+                        .build(),
+                // Decoder of the message
+                "contentType", string(this.encoder.contentType()));
+    }
 }
@@ -1,13 +1,106 @@
 package com.shop.product;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.product.dto.ProductDto;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 
-@SpringBootTest
+import java.util.UUID;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// The API end to end, on the in-memory DynamoDB and SNS of the test fixtures
+@SpringBootTest(properties = {
+        "product.snapshot.enabled=false",
+        "product.code.sweeper.enabled=false",
+        "product.inmemory.dynamodb.latency.ms=0",
+        "product.inmemory.dynamodb.jitter.ms=0",
+        "product.inmemory.sns.latency.ms=0",
+        "product.inmemory.sns.jitter.ms=0"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("inmemory")
 class ProductApplicationTests {
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    @Test
+    void createdProductsAreReadBackWithAnETag() throws Exception {
+        var code = code();
+        var created = this.mapper.readValue(
+                this.perform(this.create(code)).andExpect(status().isCreated()).andReturn().getResponse().getContentAsString(),
+                ProductDto.class);
+
+        var read = this.perform(get("/api/products/{id}", created.id()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(code))
+                .andReturn();
+
+        var etag = read.getResponse().getHeader(HttpHeaders.ETAG);
+        this.perform(get("/api/products/{id}", created.id()).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        this.perform(get("/api/products").param("code", code))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(created.id()));
+    }
+
+    @Test
+    void aHeldCodeConflicts() throws Exception {
+        var code = code();
+        this.perform(this.create(code)).andExpect(status().isCreated());
+
+        this.perform(this.create(code)).andExpect(status().isConflict());
+    }
+
+    @Test
+    void unknownIdsAreNotFound() throws Exception {
+        this.perform(get("/api/products/{id}", UUID.randomUUID())).andExpect(status().isNotFound());
+        this.perform(get("/api/products/{id}", "not-a-product")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    void importReportsEveryItem() throws Exception {
+        var code = code();
+        var body = this.json(code) + "\n" + this.json(code) + "\n";
+
+        this.perform(post("/api/products/import").contentType("application/x-ndjson").content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created").value(1))
+                .andExpect(jsonPath("$.items[0].status").value("CREATED"))
+                .andExpect(jsonPath("$.items[1].status").value("CODE_CONFLICT"));
+    }
+
+    // Operations return futures, the response is written once the async dispatch ran
+    private ResultActions perform(RequestBuilder request) throws Exception {
+        var actions = this.mvc.perform(request);
+        var result = actions.andReturn();
+        return result.getRequest().isAsyncStarted() ? this.mvc.perform(asyncDispatch(result)) : actions;
+    }
+
+    private RequestBuilder create(String code) throws Exception {
+        return post("/api/products").contentType(MediaType.APPLICATION_JSON).content(this.json(code));
+    }
 
-	@Test
-	void contextLoads() {
-	}
+    private String json(String code) throws Exception {
+        return this.mapper.writeValueAsString(new ProductDto(null, "Product " + code, null, code, "model", 10f));
+    }
 
+    private static String code() {
+        return "SKU-" + UUID.randomUUID();
+    }
 }
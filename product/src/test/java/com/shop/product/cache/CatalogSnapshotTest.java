@@ -0,0 +1,128 @@
+package com.shop.product.cache;
+
+import com.shop.product.model.Product;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CatalogSnapshotTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void writeOpenGet() throws IOException {
+        var products = IntStream.range(0, 1_000).mapToObj(i -> product(UUID.randomUUID().toString(), "CODE-" + i)).toList();
+        var path = this.dir.resolve("catalog.snapshot");
+        CatalogSnapshot.write(path, 1_700_000_000_000L, products);
+
+        var snapshot = CatalogSnapshot.open(path);
+        assertThat(snapshot.createdAt()).isEqualTo(1_700_000_000_000L);
+        assertThat(snapshot.count()).isEqualTo(products.size());
+        for (var product : products) {
+            var read = snapshot.get(product.getId());
+            assertThat(read).isNotNull();
+            assertThat(read.getCode()).isEqualTo(product.getCode());
+            assertThat(read.getProductName()).isEqualTo(product.getProductName());
+            assertThat(read.getProductUrl()).isEqualTo(product.getProductUrl());
+            assertThat(read.getModel()).isNull();
+            assertThat(read.getPrice()).isEqualTo(product.getPrice());
+            assertThat(read.getVersion()).isEqualTo(product.getVersion());
+        }
+        assertThat(snapshot.get(UUID.randomUUID().toString())).isNull();
+        assertThat(snapshot.get("")).isNull();
+        assertThat(snapshot.get("~")).isNull(); // After every id
+    }
+
+    @Test
+    void forEachInIdOrder() throws IOException {
+        var products = IntStream.range(0, 200).mapToObj(i -> product(UUID.randomUUID().toString(), "CODE-" + i)).toList();
+        var path = this.dir.resolve("catalog.snapshot");
+        CatalogSnapshot.write(path, 1L, products);
+
+        var snapshot = CatalogSnapshot.open(path);
+        var ids = new ArrayList<String>();
+        snapshot.forEach(Integer.MAX_VALUE, product -> ids.add(product.getId()));
+        assertThat(ids).hasSize(products.size()).isSorted();
+        var first = new ArrayList<String>();
+        snapshot.forEach(70, product -> first.add(product.getId()));
+        assertThat(first).isEqualTo(ids.subList(0, 70));
+    }
+
+    @Test
+    void writerMergesPagesPastOneRun() throws IOException {
+        var products = IntStream.range(0, 10_000).mapToObj(i -> product(UUID.randomUUID().toString(), "CODE-" + i)).toList();
+        var path = this.dir.resolve("catalog.snapshot");
+        try (var writer = new CatalogSnapshot.Writer(path, 1L)) {
+            for (var i = 0; i < products.size(); i += 100) writer.add(products.subList(i, i + 100)); // Pages of a scan
+            writer.commit();
+        }
+
+        var snapshot = CatalogSnapshot.open(path);
+        assertThat(snapshot.count()).isEqualTo(products.size());
+        var ids = new ArrayList<String>();
+        snapshot.forEach(Integer.MAX_VALUE, product -> ids.add(product.getId()));
+        assertThat(ids).isSorted().containsExactlyInAnyOrderElementsOf(products.stream().map(Product::getId).toList());
+        assertThat(snapshot.get(products.get(4_321).getId()).getCode()).isEqualTo("CODE-4321");
+    }
+
+    @Test
+    void openSnapshotOutlivesTheFile() throws IOException {
+        var path = this.dir.resolve("catalog.snapshot");
+        var product = product(UUID.randomUUID().toString(), "GONE");
+        CatalogSnapshot.write(path, 1L, List.of(product));
+        var open = CatalogSnapshot.open(path);
+
+        Files.delete(path); // As when another task replaces it on the shared volume
+        assertThat(open.get(product.getId())).isNotNull();
+    }
+
+    @Test
+    void emptyCatalog() throws IOException {
+        var path = this.dir.resolve("catalog.snapshot");
+        CatalogSnapshot.write(path, 1L, List.of());
+
+        var snapshot = CatalogSnapshot.open(path);
+        assertThat(snapshot.count()).isZero();
+        assertThat(snapshot.get("any")).isNull();
+    }
+
+    @Test
+    void rewriteLeavesTheOpenSnapshotReadable() throws IOException {
+        var path = this.dir.resolve("catalog.snapshot");
+        var before = product(UUID.randomUUID().toString(), "BEFORE");
+        CatalogSnapshot.write(path, 1L, List.of(before));
+        var open = CatalogSnapshot.open(path);
+
+        CatalogSnapshot.write(path, 2L, List.of(product(UUID.randomUUID().toString(), "AFTER")));
+        assertThat(open.get(before.getId())).isNotNull();
+        assertThat(CatalogSnapshot.open(path).createdAt()).isEqualTo(2L);
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        var path = this.dir.resolve("other");
+        Files.writeString(path, "not a snapshot at all, but long enough for a footer");
+        assertThatThrownBy(() -> CatalogSnapshot.open(path)).isInstanceOf(IOException.class);
+    }
+
+    private static Product product(String id, String code) {
+        var product = new Product();
+        product.setId(id);
+        product.setCode(code);
+        product.setProductName("Product " + code);
+        product.setProductUrl("https://shop.example/" + code);
+        product.setPrice(9.5f);
+        product.setVersion(3L);
+        return product;
+    }
+}
@@ -0,0 +1,93 @@
+package com.shop.product.cache;
+
+import com.shop.product.dto.EventType;
+import com.shop.product.event.ProductChangedEvent;
+import com.shop.product.model.Product;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProductCacheTest {
+    private ProductCache cache;
+
+    @BeforeEach
+    void setUp() {
+        this.cache = new ProductCache(new SimpleMeterRegistry(), 100, 60);
+    }
+
+    @Test
+    void fillsTheReadOfATable() {
+        var stamp = this.cache.stamp();
+        this.cache.fill(product("1", "read"), stamp);
+
+        assertThat(this.cache.get("1").getProductName()).isEqualTo("read");
+    }
+
+    @Test
+    void aReadStartedBeforeAWriteIsNotCached() {
+        var stamp = this.cache.stamp();
+        this.cache.on(new ProductChangedEvent(product("1", "written"), EventType.PRODUCT_UPDATED, null));
+
+        this.cache.fill(product("1", "stale"), stamp);
+
+        assertThat(this.cache.get("1").getProductName()).isEqualTo("written");
+    }
+
+    @Test
+    void aReadOfADeletedProductIsNotCached() {
+        var stamp = this.cache.stamp();
+        this.cache.on(new ProductChangedEvent(product("1", "deleted"), EventType.PRODUCT_DELETED, null));
+
+        this.cache.fill(product("1", "stale"), stamp);
+
+        assertThat(this.cache.get("1")).isNull();
+    }
+
+    @Test
+    void writesOfOtherIdsDoNotKeepAReadOut() {
+        var stamp = this.cache.stamp();
+        this.cache.on(new ProductChangedEvent(product("2", "other"), EventType.PRODUCT_CREATED, null));
+
+        this.cache.fill(product("1", "read"), stamp);
+
+        assertThat(this.cache.get("1")).isNotNull();
+    }
+
+    @Test
+    void deleteInvalidates() {
+        this.cache.fill(product("1", "read"), this.cache.stamp());
+
+        this.cache.on(new ProductChangedEvent(product("1", "read"), EventType.PRODUCT_DELETED, null));
+
+        assertThat(this.cache.get("1")).isNull();
+    }
+
+    @Test
+    void aCopyOlderThanTheTtlIsNotCached() {
+        var stamp = this.cache.stamp();
+        this.cache.fill(product("1", "young"), stamp, Duration.ofSeconds(10));
+        this.cache.fill(product("2", "old"), stamp, Duration.ofSeconds(60));
+
+        assertThat(this.cache.get("1")).isNotNull();
+        assertThat(this.cache.get("2")).isNull();
+    }
+
+    @Test
+    void everyWriteChangesTheVersion() {
+        var before = this.cache.version("1");
+        this.cache.on(new ProductChangedEvent(product("1", "written"), EventType.PRODUCT_UPDATED, null));
+
+        assertThat(this.cache.version("1")).isNotEqualTo(before);
+    }
+
+    private static Product product(String id, String name) {
+        var product = new Product();
+        product.setId(id);
+        product.setProductName(name);
+        return product;
+    }
+}
@@ -0,0 +1,91 @@
+package com.shop.product.cache;
+
+import com.shop.product.model.Product;
+import com.shop.product.repository.ProductIds;
+import com.shop.product.repository.ProductScanner;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Filter built from a scan of its own, as with product.snapshot.enabled=false
+class ProductIdFilterTest {
+    private static final long SKEW = 30_000;
+    private ProductScanner scanner;
+    private String scanned;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        this.scanner = mock(ProductScanner.class);
+        this.scanned = ProductIds.next();
+        when(this.scanner.scan(anyInt(), any())).thenAnswer(invocation -> {
+            var product = new Product();
+            product.setId(this.scanned);
+            ((Consumer<List<Product>>) invocation.getArgument(1)).accept(List.of(product));
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    @Test
+    void idsThatAreNotUuidsAreAbsentWithoutAFilter() {
+        var filter = filter(false, 0);
+
+        assertThat(filter.absent("not-a-product")).isTrue();
+        assertThat(filter.absent(ProductIds.next())).isFalse(); // Unknown until built
+    }
+
+    @Test
+    void scanBuildsTheFilterWithoutSnapshots() {
+        var filter = filter(false, 0);
+        var before = v7(System.currentTimeMillis() - 2 * SKEW);
+
+        filter.scan();
+
+        assertThat(filter.absent(this.scanned)).isFalse();
+        assertThat(filter.absent(before)).isTrue();
+        assertThat(filter.absent(ProductIds.next())).isFalse(); // Could have been created by another task since
+    }
+
+    @Test
+    void missesOfRandomIdsAreAbsentOnlyAfterTheCutover() {
+        var random = UUID.randomUUID().toString();
+
+        var before = filter(false, System.currentTimeMillis() + 60_000);
+        before.scan();
+        var after = filter(false, System.currentTimeMillis() - 2 * SKEW);
+        after.scan();
+
+        assertThat(before.absent(random)).isFalse();
+        assertThat(after.absent(random)).isTrue();
+    }
+
+    @Test
+    void noScanWithSnapshots() {
+        filter(true, 0).scan();
+
+        verify(this.scanner, never()).scan(anyInt(), any());
+    }
+
+    private ProductIdFilter filter(boolean snapshots, long cutover) {
+        return new ProductIdFilter(this.scanner, new SimpleMeterRegistry(), true, snapshots, 4, 1_000, 0.01, 64, SKEW, cutover);
+    }
+
+    private static String v7(long createdAt) {
+        var random = UUID.randomUUID();
+        var msb = (createdAt << 16) | 0x7000L | (random.getMostSignificantBits() & 0x0FFFL);
+        return new UUID(msb, random.getLeastSignificantBits()).toString();
+    }
+}
@@ -0,0 +1,63 @@
+package com.shop.product.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScalableBloomFilterTest {
+    private static final long MAX_BYTES = 64 * 1024 * 1024;
+
+    @Test
+    void noFalseNegativesWhileGrowing() {
+        var filter = new ScalableBloomFilter(1_000, 0.01, MAX_BYTES);
+        var ids = new ArrayList<String>();
+        for (var i = 0; i < 50_000; i++) { // Several slices past the initial capacity
+            var id = UUID.randomUUID().toString();
+            ids.add(id);
+            assertThat(filter.add(id)).isTrue();
+        }
+        assertThat(ids).allMatch(filter::mightContain);
+        // Ids the last slice already seemed to have are not counted
+        assertThat(filter.count()).isBetween((long) (ids.size() * 0.99), (long) ids.size());
+    }
+
+    @Test
+    void noFalseNegativesWithConcurrentAdds() {
+        var filter = new ScalableBloomFilter(1_000, 0.01, MAX_BYTES);
+        var ids = IntStream.range(0, 20_000).mapToObj(i -> UUID.randomUUID().toString()).toList();
+        ids.parallelStream().forEach(filter::add);
+        assertThat(ids).allMatch(filter::mightContain);
+    }
+
+    @Test
+    void falsePositivesStayNearTheTarget() {
+        var filter = new ScalableBloomFilter(1_000, 0.01, MAX_BYTES);
+        for (var i = 0; i < 20_000; i++) filter.add(UUID.randomUUID().toString());
+        var trials = 100_000;
+        var positives = IntStream.range(0, trials)
+                .filter(i -> filter.mightContain(UUID.randomUUID().toString()))
+                .count();
+        assertThat((double) positives / trials).isLessThan(0.02);
+        assertThat(filter.fpp()).isLessThan(0.01);
+    }
+
+    @Test
+    void duplicatesAreCountedOnce() {
+        var filter = new ScalableBloomFilter(100, 0.01, MAX_BYTES);
+        for (var i = 0; i < 10; i++) filter.add("same");
+        assertThat(filter.count()).isEqualTo(1);
+    }
+
+    @Test
+    void refusesToGrowPastTheMemoryBound() {
+        var filter = new ScalableBloomFilter(1_000, 0.01, 4 * 1024);
+        var added = true;
+        for (var i = 0; i < 100_000 && added; i++) added = filter.add(UUID.randomUUID().toString());
+        assertThat(added).isFalse();
+        assertThat(filter.bytes()).isLessThanOrEqualTo(4 * 1024);
+    }
+}
@@ -0,0 +1,56 @@
+package com.shop.product.codec;
+
+import com.shop.product.dto.ProductEventDto;
+import com.shop.product.dto.ProductFailureEventDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EventCodecTest {
+
+    @Test
+    void productEventRoundTrip() {
+        var event = new ProductEventDto("0190b5c2-7a3e-7d4c-9f1a-2b3c4d5e6f70", "SKU-4711-BLUE-XL", 129.99f, "xrmeng720@gmail.com");
+        assertThat(EventCodec.decodeProductEvent(EventCodec.encode(event))).isEqualTo(event);
+    }
+
+    @Test
+    void productEventWithNullsRoundTrip() {
+        var event = new ProductEventDto("id", null, 0f, null);
+        assertThat(EventCodec.decodeProductEvent(EventCodec.encode(event))).isEqualTo(event);
+    }
+
+    @Test
+    void failureEventRoundTrip() {
+        var event = new ProductFailureEventDto(404, "Product not found", "xrmeng720@gmail.com", "id", 12);
+        assertThat(EventCodec.decodeFailureEvent(EventCodec.encode(event))).isEqualTo(event);
+    }
+
+    @Test
+    void failureEventWithoutIdRoundTrip() {
+        var event = new ProductFailureEventDto(500, "Internal error", "xrmeng720@gmail.com", null, 1);
+        assertThat(EventCodec.decodeFailureEvent(EventCodec.encode(event))).isEqualTo(event);
+    }
+
+    @Test
+    void writesTheVersionFirst() {
+        var bytes = EventCodec.encode(new ProductEventDto("id", "code", 1f, "email"));
+        assertThat(bytes[0]).isEqualTo(EventCodec.VERSION);
+    }
+
+    @Test
+    void rejectsTheOtherKind() {
+        var bytes = EventCodec.encode(new ProductEventDto("id", "code", 1f, "email"));
+        assertThatThrownBy(() -> EventCodec.decodeFailureEvent(bytes)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsTruncatedEvents() {
+        var bytes = EventCodec.encode(new ProductEventDto("id", "code", 1f, "email"));
+        assertThatThrownBy(() -> EventCodec.decodeProductEvent(Arrays.copyOf(bytes, bytes.length - 3)))
+                .isInstanceOf(RuntimeException.class);
+    }
+}
@@ -0,0 +1,72 @@
+package com.shop.product.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AwsMetricsInterceptorTest {
+    private SimpleMeterRegistry registry;
+    private AwsMetricsInterceptor interceptor;
+    private ExecutionAttributes attributes;
+
+    @BeforeEach
+    void setUp() {
+        this.registry = new SimpleMeterRegistry();
+        this.interceptor = new AwsMetricsInterceptor(this.registry);
+        this.attributes = new ExecutionAttributes();
+        this.attributes.putAttribute(SdkExecutionAttribute.SERVICE_NAME, "DynamoDb");
+        this.attributes.putAttribute(SdkExecutionAttribute.OPERATION_NAME, "GetItem");
+    }
+
+    @Test
+    void requestsAreSentAsTheyAre() {
+        var request = GetItemRequest.builder().tableName("products").build();
+        var context = mock(Context.ModifyRequest.class);
+        when(context.request()).thenReturn(request);
+
+        assertThat(this.interceptor.modifyRequest(context, this.attributes)).isSameAs(request);
+    }
+
+    @Test
+    void recordsTheCallAndTheCapacityItCarries() {
+        var request = GetItemRequest.builder()
+                .tableName("products")
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .build();
+        var response = GetItemResponse.builder()
+                .consumedCapacity(ConsumedCapacity.builder().tableName("products").capacityUnits(0.5).build())
+                .build();
+
+        this.execute(request, response);
+
+        assertThat(this.registry.get("aws.calls").tags("resource", "products", "outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(this.registry.get("aws.dynamodb.capacity").tag("resource", "products").counter().count()).isEqualTo(0.5);
+    }
+
+    @Test
+    void recordsNoCapacityWhenTheResponseHasNone() {
+        this.execute(GetItemRequest.builder().tableName("products").build(), GetItemResponse.builder().build());
+
+        assertThat(this.registry.get("aws.calls").timer().count()).isEqualTo(1);
+        assertThat(this.registry.find("aws.dynamodb.capacity").counter()).isNull();
+    }
+
+    private void execute(GetItemRequest request, GetItemResponse response) {
+        this.interceptor.beforeExecution(mock(Context.BeforeExecution.class), this.attributes);
+        var context = mock(Context.AfterExecution.class);
+        when(context.request()).thenReturn(request);
+        when(context.response()).thenReturn(response);
+        this.interceptor.afterExecution(context, this.attributes);
+    }
+}
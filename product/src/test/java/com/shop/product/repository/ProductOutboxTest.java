@@ -0,0 +1,66 @@
+package com.shop.product.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.product.codec.EventEncoder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ProductOutboxTest {
+    private DynamoDbAsyncClient client;
+    private ProductOutbox outbox;
+
+    @BeforeEach
+    void setUp() {
+        this.client = mock(DynamoDbAsyncClient.class);
+        var enhanced = DynamoDbEnhancedAsyncClient.builder().dynamoDbClient(this.client).build();
+        this.outbox = new ProductOutbox(enhanced, this.client, new EventEncoder(new ObjectMapper(), "json"), "product-outbox", 4, 3600);
+    }
+
+    @Test
+    void leaseIsTaken() {
+        when(this.client.putItem(any(PutItemRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(PutItemResponse.builder().build()));
+
+        assertThat(this.outbox.lease(0, "task", Duration.ofSeconds(30)).join()).isTrue();
+    }
+
+    @Test
+    void leaseHeldByAnotherIsNotLeased() {
+        when(this.client.putItem(any(PutItemRequest.class)))
+                .thenReturn(CompletableFuture.failedFuture(ConditionalCheckFailedException.builder().build()));
+
+        assertThat(this.outbox.lease(0, "task", Duration.ofSeconds(30)).join()).isFalse();
+    }
+
+    @Test
+    void wrappedLeaseConflictIsNotLeased() {
+        when(this.client.putItem(any(PutItemRequest.class))).thenReturn(CompletableFuture.failedFuture(
+                new CompletionException(ConditionalCheckFailedException.builder().build())));
+
+        assertThat(this.outbox.lease(0, "task", Duration.ofSeconds(30)).join()).isFalse();
+    }
+
+    @Test
+    void otherFailuresAreRaised() {
+        when(this.client.putItem(any(PutItemRequest.class)))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("down")));
+
+        assertThatThrownBy(() -> this.outbox.lease(0, "task", Duration.ofSeconds(30)).join())
+                .hasRootCauseInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,227 @@
+package com.shop.product.repository;
+
+import com.shop.product.exception.ProductError;
+import com.shop.product.exception.ProductException;
+import com.shop.product.inmemory.InMemorySns;
+import com.shop.product.model.Product;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.services.sns.SnsAsyncClient;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+// Code uniqueness and stale writes against the in-memory DynamoDB of the test fixtures
+@SpringBootTest(properties = {
+        "product.snapshot.enabled=false",
+        "product.code.sweeper.enabled=false",
+        "product.inmemory.dynamodb.latency.ms=0",
+        "product.inmemory.dynamodb.jitter.ms=0",
+        "product.inmemory.sns.latency.ms=0",
+        "product.inmemory.sns.jitter.ms=0"
+})
+@ActiveProfiles("inmemory")
+class ProductRepositoryTest {
+    private static final String EMAIL = "xrmeng720@gmail.com";
+
+    @Autowired
+    private ProductRepository repository;
+
+    @Autowired
+    private DynamoDbEnhancedAsyncClient dynamoDb;
+
+    @Autowired
+    private SnsAsyncClient sns;
+
+    @Value("${aws.product.table.name}")
+    private String table;
+
+    @Test
+    void postOfAHeldCodeConflicts() {
+        var code = code();
+        var first = this.post(code);
+
+        var error = error(this.repository.post(product(ProductIds.next(), code), EMAIL));
+
+        assertThat(error.getError()).isEqualTo(ProductError.PRODUCT_CODE_CONFLICT);
+        assertThat(error.getId()).isEqualTo(first.getId());
+    }
+
+    @Test
+    void putTakingAHeldCodeConflictsAndKeepsTheOldOne() {
+        var code = code();
+        var holder = this.post(code);
+        var other = this.post(code());
+
+        var error = error(this.repository.put(product(null, code), other.getId(), EMAIL));
+
+        assertThat(error.getError()).isEqualTo(ProductError.PRODUCT_CODE_CONFLICT);
+        assertThat(error.getId()).isEqualTo(holder.getId());
+        assertThat(this.repository.getByCode(other.getCode()).join().getId()).isEqualTo(other.getId());
+    }
+
+    @Test
+    void putReleasesThePreviousCode() {
+        var code = code();
+        var product = this.post(code);
+        var renamed = code();
+
+        this.repository.put(product(null, renamed), product.getId(), EMAIL).join();
+
+        assertThat(this.repository.getByCode(renamed).join().getId()).isEqualTo(product.getId());
+        assertThat(this.repository.getByCode(code).join()).isNull();
+        assertThat(this.post(code).getCode()).isEqualTo(code); // Free again
+    }
+
+    @Test
+    void putKeepingTheCodeDoesNotConflictWithItself() {
+        var product = this.post(code());
+
+        var updated = this.repository.put(product(null, product.getCode()), product.getId(), EMAIL).join();
+
+        assertThat(updated.getVersion()).isEqualTo(2L);
+    }
+
+    @Test
+    void deleteReleasesTheCode() {
+        var code = code();
+        var product = this.post(code);
+
+        var deleted = this.repository.delete(product.getId(), EMAIL).join();
+
+        assertThat(deleted.getId()).isEqualTo(product.getId());
+        assertThat(this.repository.getById(product.getId()).join()).isNull();
+        assertThat(this.repository.getByCode(code).join()).isNull();
+        assertThat(this.post(code).getCode()).isEqualTo(code);
+    }
+
+    @Test
+    void putOfAStaleCachedProductIsRetriedFromTheTable() {
+        var product = this.post(code());
+        // Written behind the cache, as another task would
+        var behind = product(product.getId(), product.getCode());
+        behind.setProductName("Written elsewhere");
+        behind.setVersion(2L);
+        this.dynamoDb.table(this.table, TableSchemas.PRODUCT).putItem(behind).join();
+
+        var update = product(null, product.getCode());
+        update.setProductName("Written here");
+        var updated = this.repository.put(update, product.getId(), EMAIL).join();
+
+        assertThat(updated.getVersion()).isEqualTo(3L);
+        assertThat(this.repository.getById(product.getId()).join().getProductName()).isEqualTo("Written here");
+    }
+
+    @Test
+    void deleteOfAProductDeletedBehindTheCacheIsNull() {
+        var product = this.post(code());
+        var key = Key.builder()
+                .partitionValue(product.getId())
+                .build();
+        this.dynamoDb.table(this.table, TableSchemas.PRODUCT).deleteItem(key).join();
+
+        assertThat(this.repository.delete(product.getId(), EMAIL).join()).isNull();
+    }
+
+    @Test
+    void putOfAMissingProductIsNotFound() {
+        var error = error(this.repository.put(product(null, code()), ProductIds.next(), EMAIL));
+
+        assertThat(error.getError()).isEqualTo(ProductError.PRODUCT_NOT_FOUND);
+    }
+
+    @Test
+    void deleteOfAMissingProductIsNull() {
+        assertThat(this.repository.delete(ProductIds.next(), EMAIL).join()).isNull();
+    }
+
+    @Test
+    void reserveAllClaimsTheFreeCodesAndReportsTheHeldOnes() {
+        var held = this.post(code());
+        var taken = product(ProductIds.next(), held.getCode());
+        var free = product(ProductIds.next(), code());
+
+        var claims = this.repository.reserveAll(List.of(taken, free)).join();
+
+        assertThat(claims.claimed()).containsExactly(free.getId());
+        assertThat(claims.conflicts()).containsExactly(Map.entry(taken.getId(), held.getId()));
+        assertThat(claims.failed()).isEmpty();
+    }
+
+    @Test
+    void reserveAllClaimsMoreThanOneTransaction() {
+        var products = IntStream.range(0, 250).mapToObj(i -> product(ProductIds.next(), code())).toList();
+
+        var claims = this.repository.reserveAll(products).join();
+
+        assertThat(claims.claimed()).hasSize(250);
+        assertThat(claims.conflicts()).isEmpty();
+        assertThat(this.repository.reserveAll(List.of(product(ProductIds.next(), products.get(200).getCode()))).join()
+                .conflicts()).containsValue(products.get(200).getId());
+    }
+
+    @Test
+    void reserveAllGivesARepeatedCodeToTheFirstProduct() {
+        var code = code();
+        var first = product(ProductIds.next(), code);
+        var second = product(ProductIds.next(), code);
+
+        var claims = this.repository.reserveAll(List.of(first, second)).join();
+
+        assertThat(claims.claimed()).containsExactly(first.getId());
+        assertThat(claims.conflicts()).containsExactly(Map.entry(second.getId(), first.getId()));
+    }
+
+    @Test
+    void postAllWritesEveryProductWithItsEvent() throws InterruptedException {
+        var published = ((InMemorySns) this.sns).published();
+        var products = IntStream.range(0, 30).mapToObj(i -> product(ProductIds.next(), code())).toList();
+        this.repository.reserveAll(products).join();
+
+        var failed = this.repository.postAll(products, EMAIL).join();
+
+        assertThat(failed).isEmpty();
+        assertThat(products).allMatch(product -> this.repository.getById(product.getId()).join() != null);
+        // Published by the relay from the outbox
+        for (var i = 0; i < 100 && ((InMemorySns) this.sns).published() < published + products.size(); i++) Thread.sleep(50);
+        assertThat(((InMemorySns) this.sns).published()).isGreaterThanOrEqualTo(published + products.size());
+    }
+
+    private Product post(String code) {
+        var product = product(ProductIds.next(), code);
+        this.repository.post(product, EMAIL).join();
+        return product;
+    }
+
+    private static Product product(String id, String code) {
+        var product = new Product();
+        product.setId(id);
+        product.setCode(code);
+        product.setProductName("Product " + code);
+        product.setModel("model");
+        product.setPrice(10f);
+        return product;
+    }
+
+    private static String code() {
+        return "SKU-" + UUID.randomUUID();
+    }
+
+    private static ProductException error(CompletableFuture<?> future) {
+        var thrown = catchThrowable(future::join);
+        assertThat(thrown).isInstanceOf(CompletionException.class).hasCauseInstanceOf(ProductException.class);
+        return (ProductException) thrown.getCause();
+    }
+}
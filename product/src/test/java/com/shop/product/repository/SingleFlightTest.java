@@ -0,0 +1,110 @@
+package com.shop.product.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+    private SimpleMeterRegistry registry;
+    private SingleFlight<String> flights;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        this.registry = new SimpleMeterRegistry();
+        this.flights = new SingleFlight<>(this.registry, "id");
+    }
+
+    @Test
+    void concurrentReadsOfOneVersionShareTheLoad() {
+        var read = new CompletableFuture<String>();
+        var first = this.flights.get("a", 1, () -> this.load(read));
+        var second = this.flights.get("a", 1, () -> this.load(CompletableFuture.completedFuture("other")));
+        assertThat(this.loads.get()).isEqualTo(1);
+        assertThat(this.inflight()).isEqualTo(1);
+
+        read.complete("value");
+        assertThat(first.join()).isEqualTo("value");
+        assertThat(second.join()).isEqualTo("value");
+        assertThat(this.count("loaded")).isEqualTo(1);
+        assertThat(this.count("coalesced")).isEqualTo(1);
+        assertThat(this.inflight()).isZero();
+    }
+
+    @Test
+    void aWrittenKeyStartsANewLoad() {
+        var before = new CompletableFuture<String>();
+        var first = this.flights.get("a", 1, () -> this.load(before));
+        var second = this.flights.get("a", 2, () -> this.load(CompletableFuture.completedFuture("after")));
+        assertThat(this.loads.get()).isEqualTo(2);
+        assertThat(second.join()).isEqualTo("after");
+        before.complete("before");
+        assertThat(first.join()).isEqualTo("before");
+    }
+
+    @Test
+    void otherKeysDoNotShare() {
+        var read = new CompletableFuture<String>();
+        this.flights.get("a", 1, () -> this.load(read));
+        this.flights.get("b", 1, () -> this.load(read));
+        assertThat(this.loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void aCompletedFlightIsNotJoined() {
+        this.flights.get("a", 1, () -> this.load(CompletableFuture.completedFuture("first"))).join();
+        var second = this.flights.get("a", 1, () -> this.load(CompletableFuture.completedFuture("second")));
+        assertThat(second.join()).isEqualTo("second");
+        assertThat(this.loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void cancellingOneCallerLeavesTheOthers() {
+        var read = new CompletableFuture<String>();
+        var first = this.flights.get("a", 1, () -> this.load(read));
+        var second = this.flights.get("a", 1, () -> this.load(read));
+        first.cancel(true);
+        read.complete("value");
+        assertThat(second.join()).isEqualTo("value");
+    }
+
+    @Test
+    void aFailureReachesEveryCallerAndEndsTheFlight() {
+        var read = new CompletableFuture<String>();
+        var first = this.flights.get("a", 1, () -> this.load(read));
+        var second = this.flights.get("a", 1, () -> this.load(read));
+        read.completeExceptionally(new IllegalStateException("down"));
+        assertThatThrownBy(first::join).isInstanceOf(CompletionException.class).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(second::join).isInstanceOf(CompletionException.class).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(this.inflight()).isZero();
+    }
+
+    @Test
+    void aThrowingLoadFailsTheFuture() {
+        var failed = this.flights.get("a", 1, () -> {
+            throw new IllegalStateException("down");
+        });
+        assertThatThrownBy(failed::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(this.inflight()).isZero();
+    }
+
+    private CompletableFuture<String> load(CompletableFuture<String> read) {
+        this.loads.incrementAndGet();
+        return read;
+    }
+
+    private double count(String result) {
+        return this.registry.get("product.reads").tag("lookup", "id").tag("result", result).counter().count();
+    }
+
+    private double inflight() {
+        return this.registry.get("product.reads.inflight").tag("lookup", "id").gauge().value();
+    }
+}
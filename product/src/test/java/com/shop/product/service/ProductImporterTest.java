@@ -0,0 +1,130 @@
+package com.shop.product.service;
+
+import com.shop.product.dto.ProductDto;
+import com.shop.product.dto.ProductImportItemDto;
+import com.shop.product.dto.ProductImportStatus;
+import com.shop.product.model.Product;
+import com.shop.product.repository.CodeClaims;
+import com.shop.product.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Partial failures of an import, against a mocked repository
+// Codes: OK claimed and written, TAKEN held by another product, DOWN claim failed, LOST claimed but not written
+class ProductImporterTest {
+    private static final String EMAIL = "xrmeng720@gmail.com";
+    private ProductRepository repository;
+    private ProductImporter importer;
+
+    @BeforeEach
+    void setUp() {
+        this.repository = mock(ProductRepository.class);
+        this.importer = new ProductImporter(this.repository);
+        when(this.repository.reserveAll(anyList())).thenAnswer(invocation -> {
+            List<Product> products = invocation.getArgument(0);
+            var claimed = new HashSet<String>();
+            var conflicts = new HashMap<String, String>();
+            var failed = new HashSet<String>();
+            for (var product : products)
+                switch (product.getCode()) {
+                    case "TAKEN" -> conflicts.put(product.getId(), "holder");
+                    case "DOWN" -> failed.add(product.getId());
+                    default -> claimed.add(product.getId());
+                }
+            return CompletableFuture.completedFuture(new CodeClaims(claimed, conflicts, failed));
+        });
+        when(this.repository.postAll(anyList(), anyString())).thenAnswer(invocation -> {
+            List<Product> products = invocation.getArgument(0);
+            return CompletableFuture.completedFuture(ids(products, "LOST"));
+        });
+        when(this.repository.releaseAll(any())).thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @Test
+    void reportsEveryOutcomeInRequestOrder() {
+        var result = this.importer.importAll(dtos("OK", "TAKEN", "DOWN", "OK", "LOST"), EMAIL).join();
+
+        var items = result.items();
+        assertThat(items).extracting(ProductImportItemDto::status).containsExactly(
+                ProductImportStatus.CREATED,
+                ProductImportStatus.CODE_CONFLICT,
+                ProductImportStatus.FAILED,
+                ProductImportStatus.CODE_CONFLICT, // Same code as the first one in the body
+                ProductImportStatus.FAILED);
+        assertThat(items.get(1).id()).isEqualTo("holder");
+        assertThat(items.get(3).id()).isEqualTo(items.get(0).id());
+        assertThat(items.get(2).id()).isNull();
+        assertThat(items.get(4).id()).isNull();
+        assertThat(result.created()).isEqualTo(1);
+        assertThat(result.failed()).isEqualTo(4);
+    }
+
+    @Test
+    void failedClaimsAreNotWritten() {
+        this.importer.importAll(dtos("OK", "DOWN"), EMAIL).join();
+
+        var written = captor();
+        verify(this.repository).postAll(written.capture(), eq(EMAIL));
+        assertThat(written.getValue()).extracting(Product::getCode).containsExactly("OK");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void releasesTheCodesOfUnwrittenProducts() {
+        this.importer.importAll(dtos("OK", "LOST"), EMAIL).join();
+
+        var released = ArgumentCaptor.forClass(Collection.class);
+        verify(this.repository).releaseAll(released.capture());
+        assertThat((Collection<Product>) released.getValue()).extracting(Product::getCode).containsExactly("LOST");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void aFailedWriteReleasesEveryClaim() {
+        when(this.repository.postAll(anyList(), anyString())).thenReturn(CompletableFuture.failedFuture(new IllegalStateException("down")));
+
+        var result = this.importer.importAll(dtos("OK", "TAKEN", "OK2"), EMAIL);
+
+        assertThatThrownBy(result::join).isInstanceOf(CompletionException.class);
+        var released = ArgumentCaptor.forClass(Collection.class);
+        verify(this.repository).releaseAll(released.capture());
+        assertThat((Collection<Product>) released.getValue()).extracting(Product::getCode).containsExactlyInAnyOrder("OK", "OK2");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<Product>> captor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+
+    private static List<ProductDto> dtos(String... codes) {
+        return Arrays.stream(codes)
+                .map(code -> new ProductDto(null, "Product " + code, null, code, "model", 10f))
+                .toList();
+    }
+
+    private static Set<String> ids(List<Product> products, String code) {
+        var ids = new HashSet<String>();
+        products.stream().filter(product -> code.equals(product.getCode())).forEach(product -> ids.add(product.getId()));
+        return ids;
+    }
+}
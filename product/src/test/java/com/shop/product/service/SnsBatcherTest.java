@@ -0,0 +1,129 @@
+package com.shop.product.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sns.SnsAsyncClient;
+import software.amazon.awssdk.services.sns.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sns.model.PublishBatchRequest;
+import software.amazon.awssdk.services.sns.model.PublishBatchResponse;
+import software.amazon.awssdk.services.sns.model.PublishBatchResultEntry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Batching against a mocked SNS client, its answers built per test
+class SnsBatcherTest {
+    private static final String TOPIC = "arn:aws:sns:us-east-1:000000000000:shop-sns-product-events";
+    private final List<PublishBatchRequest> requests = new CopyOnWriteArrayList<>();
+    private SnsAsyncClient client;
+    private SnsBatcher batcher;
+
+    @BeforeEach
+    void setUp() {
+        this.client = mock(SnsAsyncClient.class);
+        this.answer(SnsBatcherTest::allSuccessful);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (this.batcher != null) this.batcher.close();
+    }
+
+    @Test
+    void tenPublishesGoInOneBatchRightAway() {
+        this.batcher = new SnsBatcher(this.client, TOPIC, Duration.ofHours(1));
+
+        var responses = IntStream.range(0, 10).mapToObj(i -> this.batcher.publish("message-" + i, Map.of())).toList();
+
+        assertThat(this.requests).hasSize(1);
+        assertThat(this.requests.getFirst().topicArn()).isEqualTo(TOPIC);
+        assertThat(this.requests.getFirst().publishBatchRequestEntries()).hasSize(10);
+        // Every caller gets the message id of its own entry
+        for (var i = 0; i < responses.size(); i++)
+            assertThat(responses.get(i).join().messageId()).isEqualTo("id-message-" + i);
+    }
+
+    @Test
+    void aPartialBatchIsSentAfterTheMaxDelay() {
+        this.batcher = new SnsBatcher(this.client, TOPIC, Duration.ofMillis(20));
+
+        var response = this.batcher.publish("alone", Map.of());
+
+        assertThat(response.join().messageId()).isEqualTo("id-alone");
+        assertThat(this.requests).hasSize(1);
+    }
+
+    @Test
+    void failedAndMissingEntriesFailTheirCallers() {
+        this.answer(request -> PublishBatchResponse.builder()
+                .successful(entry(request, 0))
+                .failed(BatchResultErrorEntry.builder().id("1").code("InternalError").message("down").build())
+                .build());
+        this.batcher = new SnsBatcher(this.client, TOPIC, Duration.ofMillis(20));
+
+        var ok = this.batcher.publish("ok", Map.of());
+        var failed = this.batcher.publish("failed", Map.of());
+        var missing = this.batcher.publish("missing", Map.of());
+
+        assertThat(ok.join().messageId()).isEqualTo("id-ok");
+        assertThatThrownBy(failed::join).isInstanceOf(CompletionException.class).hasMessageContaining("InternalError");
+        assertThatThrownBy(missing::join).isInstanceOf(CompletionException.class).hasMessageContaining("missing");
+    }
+
+    @Test
+    void aFailedBatchFailsEveryCaller() {
+        when(this.client.publishBatch(any(PublishBatchRequest.class))).thenReturn(CompletableFuture.failedFuture(new IllegalStateException("down")));
+        this.batcher = new SnsBatcher(this.client, TOPIC, Duration.ofMillis(20));
+
+        var first = this.batcher.publish("first", Map.of());
+        var second = this.batcher.publish("second", Map.of());
+
+        assertThatThrownBy(first::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(second::join).hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void closeFlushesAndLaterPublishesAreSentAlone() {
+        this.batcher = new SnsBatcher(this.client, TOPIC, Duration.ofHours(1));
+        var pending = this.batcher.publish("pending", Map.of());
+
+        this.batcher.close();
+        var late = this.batcher.publish("late", Map.of());
+
+        assertThat(pending.join().messageId()).isEqualTo("id-pending");
+        assertThat(late.join().messageId()).isEqualTo("id-late");
+        assertThat(this.requests).hasSize(2);
+    }
+
+    private void answer(Function<PublishBatchRequest, PublishBatchResponse> response) {
+        when(this.client.publishBatch(any(PublishBatchRequest.class))).thenAnswer(invocation -> {
+            PublishBatchRequest request = invocation.getArgument(0);
+            this.requests.add(request);
+            return CompletableFuture.completedFuture(response.apply(request));
+        });
+    }
+
+    private static PublishBatchResponse allSuccessful(PublishBatchRequest request) {
+        return PublishBatchResponse.builder()
+                .successful(IntStream.range(0, request.publishBatchRequestEntries().size()).mapToObj(i -> entry(request, i)).toList())
+                .build();
+    }
+
+    private static PublishBatchResultEntry entry(PublishBatchRequest request, int i) {
+        var entry = request.publishBatchRequestEntries().get(i);
+        return PublishBatchResultEntry.builder().id(entry.id()).messageId("id-" + entry.message()).build();
+    }
+}
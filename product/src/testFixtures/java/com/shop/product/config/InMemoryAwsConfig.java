@@ -0,0 +1,74 @@
+package com.shop.product.config;
+
+import com.shop.product.inmemory.InMemoryDynamoDb;
+import com.shop.product.inmemory.InMemoryFaults;
+import com.shop.product.inmemory.InMemorySns;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.sns.SnsAsyncClient;
+import software.amazon.awssdk.services.sns.model.Topic;
+
+import java.time.Duration;
+
+// In place of DynamoDbConfig and SnsConfig with --spring.profiles.active=inmemory
+// Load benchmarks of the API without AWS, see application-inmemory.properties for latency and throttling
+@Configuration
+@Profile("inmemory")
+public class InMemoryAwsConfig {
+    @Value("${aws.product.table.name}")
+    private String productTable;
+
+    @Value("${aws.product.outbox.table.name}")
+    private String outboxTable;
+
+    @Value("${aws.sns.topic.product.events}")
+    private String productSnsTopicArn;
+
+    private final Environment env;
+
+    public InMemoryAwsConfig(Environment env) {
+        this.env = env;
+    }
+
+    // Same keys and index as the tables of the ProductStack
+    @Bean
+    public DynamoDbAsyncClient dynamoDbAsyncClient() {
+        return new InMemoryDynamoDb(this.faults("dynamodb"))
+                .table(this.productTable, "id", null)
+                .index(this.productTable, "IndexOnCode", "code")
+                .table(this.outboxTable, "shard", "id");
+    }
+
+    @Bean
+    public DynamoDbEnhancedAsyncClient dynamoDbEnhancedAsyncClient() {
+        return DynamoDbEnhancedAsyncClient.builder()
+                .dynamoDbClient(dynamoDbAsyncClient())
+                .build();
+    }
+
+    @Bean
+    public SnsAsyncClient snsClient() {
+        return new InMemorySns(this.faults("sns"));
+    }
+
+    @Bean(name = "productSnsTopic")
+    public Topic productSnsTopic() {
+        return Topic.builder()
+                .topicArn(this.productSnsTopicArn)
+                .build();
+    }
+
+    // product.inmemory.<service>.latency.ms, .jitter.ms and .throttle.rate (0 to 1)
+    private InMemoryFaults faults(String service) {
+        var prefix = "product.inmemory." + service + ".";
+        return new InMemoryFaults(
+                Duration.ofMillis(this.env.getRequiredProperty(prefix + "latency.ms", Long.class)),
+                Duration.ofMillis(this.env.getRequiredProperty(prefix + "jitter.ms", Long.class)),
+                this.env.getRequiredProperty(prefix + "throttle.rate", Double.class));
+    }
+}
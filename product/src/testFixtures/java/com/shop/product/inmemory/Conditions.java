@@ -0,0 +1,243 @@
+package com.shop.product.inmemory;
+
+import jakarta.annotation.Nullable;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+// DynamoDB condition, filter and key condition expressions, the subset this service writes
+// OR, AND, NOT, parentheses, = <> < <= > >=, attribute_exists, attribute_not_exists and begins_with
+// Parsed once per expression text, names and values are bound on every evaluation
+final class Conditions {
+    private static final Pattern TOKEN = Pattern.compile("\\s*(<>|<=|>=|[()=<>,]|[#:]?[A-Za-z0-9_.]+)");
+    private static final Map<String, Node> PARSED = new ConcurrentHashMap<>();
+
+    private Conditions() {
+    }
+
+    // No expression holds for every item, a missing item has no attributes
+    static boolean test(
+            @Nullable String expression,
+            @Nullable Map<String, AttributeValue> item,
+            @Nullable Map<String, String> names,
+            @Nullable Map<String, AttributeValue> values) {
+        if (expression == null || expression.isBlank()) return true;
+        var node = PARSED.computeIfAbsent(expression, Conditions::parse);
+        return node.test(new Scope(item == null ? Map.of() : item, names == null ? Map.of() : names, values == null ? Map.of() : values));
+    }
+
+    // Value the expression requires the attribute to be equal to, for key conditions
+    @Nullable
+    static AttributeValue equality(
+            String expression,
+            String attribute,
+            @Nullable Map<String, String> names,
+            @Nullable Map<String, AttributeValue> values) {
+        var node = PARSED.computeIfAbsent(expression, Conditions::parse);
+        var scope = new Scope(Map.of(), names == null ? Map.of() : names, values == null ? Map.of() : values);
+        return equality(node, attribute, scope);
+    }
+
+    private static AttributeValue equality(Node node, String attribute, Scope scope) {
+        if (node instanceof And and) {
+            var left = equality(and.left(), attribute, scope);
+            return left != null ? left : equality(and.right(), attribute, scope);
+        }
+        if (node instanceof Compare compare
+                && compare.operator().equals("=")
+                && compare.left() instanceof Path path
+                && scope.name(path.name()).equals(attribute))
+            return scope.operand(compare.right());
+        return null;
+    }
+
+    private record Scope(Map<String, AttributeValue> item, Map<String, String> names, Map<String, AttributeValue> values) {
+        String name(String token) {
+            return token.startsWith("#") ? Objects.requireNonNull(this.names.get(token), token) : token;
+        }
+
+        @Nullable
+        AttributeValue operand(Node node) {
+            if (node instanceof Path path) return this.item.get(this.name(path.name()));
+            if (node instanceof Value value) return Objects.requireNonNull(this.values.get(value.name()), value.name());
+            throw new IllegalArgumentException("Not an operand");
+        }
+    }
+
+    private sealed interface Node {
+        default boolean test(Scope scope) {
+            throw new IllegalArgumentException("Not a condition");
+        }
+    }
+
+    private record Or(Node left, Node right) implements Node {
+        @Override
+        public boolean test(Scope scope) {
+            return this.left.test(scope) || this.right.test(scope);
+        }
+    }
+
+    private record And(Node left, Node right) implements Node {
+        @Override
+        public boolean test(Scope scope) {
+            return this.left.test(scope) && this.right.test(scope);
+        }
+    }
+
+    private record Not(Node node) implements Node {
+        @Override
+        public boolean test(Scope scope) {
+            return !this.node.test(scope);
+        }
+    }
+
+    private record Exists(Path path, boolean expected) implements Node {
+        @Override
+        public boolean test(Scope scope) {
+            return (scope.operand(this.path) != null) == this.expected;
+        }
+    }
+
+    private record BeginsWith(Node operand, Node prefix) implements Node {
+        @Override
+        public boolean test(Scope scope) {
+            var value = scope.operand(this.operand);
+            var prefix = scope.operand(this.prefix);
+            return value != null && prefix != null && value.s() != null && prefix.s() != null
+                    && value.s().startsWith(prefix.s());
+        }
+    }
+
+    private record Compare(Node left, String operator, Node right) implements Node {
+        @Override
+        public boolean test(Scope scope) {
+            var left = scope.operand(this.left);
+            var right = scope.operand(this.right);
+            if (left == null || right == null) return false;
+            if (this.operator.equals("=")) return compare(left, right) == 0;
+            if (this.operator.equals("<>")) return compare(left, right) != 0;
+            var order = compare(left, right);
+            return switch (this.operator) {
+                case "<" -> order < 0;
+                case "<=" -> order <= 0;
+                case ">" -> order > 0;
+                case ">=" -> order >= 0;
+                default -> throw new IllegalArgumentException(this.operator);
+            };
+        }
+    }
+
+    private record Path(String name) implements Node {
+    }
+
+    private record Value(String name) implements Node {
+    }
+
+    // Numbers by value, strings by text, anything else by equality only
+    private static int compare(AttributeValue left, AttributeValue right) {
+        if (left.n() != null && right.n() != null) return new BigDecimal(left.n()).compareTo(new BigDecimal(right.n()));
+        if (left.s() != null && right.s() != null) return left.s().compareTo(right.s());
+        return left.equals(right) ? 0 : 1;
+    }
+
+    private static Node parse(String expression) {
+        var tokens = new ArrayList<String>();
+        var matcher = TOKEN.matcher(expression);
+        var end = 0;
+        while (matcher.find() && matcher.start() == end) {
+            tokens.add(matcher.group(1));
+            end = matcher.end();
+        }
+        if (!expression.substring(end).isBlank())
+            throw new IllegalArgumentException("Unsupported expression: " + expression);
+        var parser = new Parser(tokens);
+        var node = parser.or();
+        if (parser.position < tokens.size())
+            throw new IllegalArgumentException("Unsupported expression: " + expression);
+        return node;
+    }
+
+    private static final class Parser {
+        private final List<String> tokens;
+        private int position;
+
+        Parser(List<String> tokens) {
+            this.tokens = tokens;
+        }
+
+        Node or() {
+            var node = this.and();
+            while (this.accept("OR")) node = new Or(node, this.and());
+            return node;
+        }
+
+        Node and() {
+            var node = this.not();
+            while (this.accept("AND")) node = new And(node, this.not());
+            return node;
+        }
+
+        Node not() {
+            return this.accept("NOT") ? new Not(this.not()) : this.primary();
+        }
+
+        Node primary() {
+            if (this.accept("(")) {
+                var node = this.or();
+                this.expect(")");
+                return node;
+            }
+            var token = this.next();
+            switch (token) {
+                case "attribute_exists", "attribute_not_exists" -> {
+                    this.expect("(");
+                    var path = new Path(this.next());
+                    this.expect(")");
+                    return new Exists(path, token.equals("attribute_exists"));
+                }
+                case "begins_with" -> {
+                    this.expect("(");
+                    var operand = this.operand(this.next());
+                    this.expect(",");
+                    var prefix = this.operand(this.next());
+                    this.expect(")");
+                    return new BeginsWith(operand, prefix);
+                }
+                default -> {
+                    var left = this.operand(token);
+                    var operator = this.next();
+                    if (!List.of("=", "<>", "<", "<=", ">", ">=").contains(operator))
+                        throw new IllegalArgumentException("Unsupported operator: " + operator);
+                    return new Compare(left, operator, this.operand(this.next()));
+                }
+            }
+        }
+
+        private Node operand(String token) {
+            return token.startsWith(":") ? new Value(token) : new Path(token);
+        }
+
+        private boolean accept(String token) {
+            if (this.position < this.tokens.size() && this.tokens.get(this.position).equalsIgnoreCase(token)) {
+                this.position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String token) {
+            if (!this.accept(token)) throw new IllegalArgumentException("Expected " + token);
+        }
+
+        private String next() {
+            if (this.position >= this.tokens.size()) throw new IllegalArgumentException("Unexpected end");
+            return this.tokens.get(this.position++);
+        }
+    }
+}
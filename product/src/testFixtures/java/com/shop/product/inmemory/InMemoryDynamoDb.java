@@ -0,0 +1,422 @@
+package com.shop.product.inmemory;
+
+import jakarta.annotation.Nullable;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+import software.amazon.awssdk.services.dynamodb.paginators.QueryPublisher;
+import software.amazon.awssdk.services.dynamodb.paginators.ScanPublisher;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+// DynamoDB tables kept in memory, behind the same client interface the repositories use
+// Conditional puts and deletes, transactions, batches, queries on the table and its GSIs, segmented scans
+// Operations run one at a time, which makes every transaction trivially atomic
+// Not supported operations fail with UnsupportedOperationException, as the interface defaults do
+public class InMemoryDynamoDb implements DynamoDbAsyncClient {
+    private final InMemoryFaults faults;
+    private final Map<String, Table> tables = new HashMap<>();
+
+    public InMemoryDynamoDb(InMemoryFaults faults) {
+        this.faults = faults;
+    }
+
+    public InMemoryDynamoDb table(String name, String partitionKey, @Nullable String sortKey) {
+        this.tables.put(name, new Table(partitionKey, sortKey));
+        return this;
+    }
+
+    // GSI with a partition key only, projecting all attributes
+    public InMemoryDynamoDb index(String table, String index, String partitionKey) {
+        this.tables.get(table).indexes.put(index, new Index(partitionKey));
+        return this;
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public CompletableFuture<GetItemResponse> getItem(GetItemRequest request) {
+        return this.call(() -> {
+            var table = this.table(request.tableName());
+            var item = table.items.get(table.key(request.key()));
+            var response = GetItemResponse.builder();
+            if (item != null) response.item(item);
+            return response.build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<PutItemResponse> putItem(PutItemRequest request) {
+        return this.call(() -> {
+            var table = this.table(request.tableName());
+            var old = table.items.get(table.key(request.item()));
+            if (!Conditions.test(request.conditionExpression(), old, request.expressionAttributeNames(), request.expressionAttributeValues()))
+                throw conditionFailed();
+            table.put(request.item());
+            var response = PutItemResponse.builder();
+            if (old != null && request.returnValues() == ReturnValue.ALL_OLD) response.attributes(old);
+            return response.build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<DeleteItemResponse> deleteItem(DeleteItemRequest request) {
+        return this.call(() -> {
+            var table = this.table(request.tableName());
+            var old = table.items.get(table.key(request.key()));
+            if (!Conditions.test(request.conditionExpression(), old, request.expressionAttributeNames(), request.expressionAttributeValues()))
+                throw conditionFailed();
+            table.remove(request.key());
+            var response = DeleteItemResponse.builder();
+            if (old != null && request.returnValues() == ReturnValue.ALL_OLD) response.attributes(old);
+            return response.build();
+        });
+    }
+
+    // Every condition is checked before anything is written
+    @Override
+    public CompletableFuture<TransactWriteItemsResponse> transactWriteItems(TransactWriteItemsRequest request) {
+        return this.call(() -> {
+            var reasons = new ArrayList<CancellationReason>();
+            var cancelled = false;
+            for (var write : request.transactItems()) {
+                var reason = this.check(write);
+                cancelled |= reason != null;
+                reasons.add(reason != null ? reason : CancellationReason.builder().code("None").build());
+            }
+            if (cancelled)
+                throw TransactionCanceledException.builder()
+                        .message("Transaction cancelled, please refer cancellation reasons for specific reasons")
+                        .cancellationReasons(reasons)
+                        .statusCode(400)
+                        .build();
+            for (var write : request.transactItems()) {
+                if (write.put() != null) this.table(write.put().tableName()).put(write.put().item());
+                else if (write.delete() != null) this.table(write.delete().tableName()).remove(write.delete().key());
+            }
+            return TransactWriteItemsResponse.builder().build();
+        });
+    }
+
+    // A throttled batch is not failed, its items come back unprocessed
+    @Override
+    public CompletableFuture<BatchGetItemResponse> batchGetItem(BatchGetItemRequest request) {
+        var throttled = this.faults.throttled();
+        return this.faults.call(() -> this.locked(() -> {
+            var responses = new HashMap<String, List<Map<String, AttributeValue>>>();
+            var unprocessed = new HashMap<String, KeysAndAttributes>();
+            request.requestItems().forEach((name, keys) -> {
+                if (throttled) {
+                    unprocessed.put(name, keys);
+                    return;
+                }
+                var table = this.table(name);
+                responses.put(name, keys.keys().stream()
+                        .map(key -> table.items.get(table.key(key)))
+                        .filter(Objects::nonNull)
+                        .toList());
+            });
+            return BatchGetItemResponse.builder()
+                    .responses(responses)
+                    .unprocessedKeys(unprocessed)
+                    .build();
+        }));
+    }
+
+    @Override
+    public CompletableFuture<BatchWriteItemResponse> batchWriteItem(BatchWriteItemRequest request) {
+        var throttled = this.faults.throttled();
+        return this.faults.call(() -> this.locked(() -> {
+            if (throttled)
+                return BatchWriteItemResponse.builder().unprocessedItems(request.requestItems()).build();
+            request.requestItems().forEach((name, writes) -> {
+                var table = this.table(name);
+                for (WriteRequest write : writes) {
+                    if (write.putRequest() != null) table.put(write.putRequest().item());
+                    else table.remove(write.deleteRequest().key());
+                }
+            });
+            return BatchWriteItemResponse.builder().unprocessedItems(Map.of()).build();
+        }));
+    }
+
+    // Items of one partition key value, of the table or of an index
+    @Override
+    public CompletableFuture<QueryResponse> query(QueryRequest request) {
+        return this.call(() -> {
+            var table = this.table(request.tableName());
+            var index = request.indexName() == null ? null : table.indexes.get(request.indexName());
+            if (request.indexName() != null && index == null)
+                throw ResourceNotFoundException.builder().message("Index not found: " + request.indexName()).statusCode(400).build();
+            var partitionKey = index == null ? table.partitionKey : index.partitionKey;
+            var value = Conditions.equality(request.keyConditionExpression(), partitionKey,
+                    request.expressionAttributeNames(), request.expressionAttributeValues());
+            if (value == null)
+                throw new UnsupportedOperationException("Key condition without partition key: " + request.keyConditionExpression());
+            var keys = index == null
+                    ? table.items.subMap(Table.prefix(value), true, Table.prefix(value) + Character.MAX_VALUE, true).navigableKeySet()
+                    : index.entries.getOrDefault(Table.text(value), new TreeSet<>());
+            var page = this.page(table, keys, request.exclusiveStartKey(), request.limit(), item ->
+                    Conditions.test(request.keyConditionExpression(), item, request.expressionAttributeNames(), request.expressionAttributeValues())
+                            && Conditions.test(request.filterExpression(), item, request.expressionAttributeNames(), request.expressionAttributeValues()));
+            return QueryResponse.builder()
+                    .items(page.items())
+                    .count(page.items().size())
+                    .scannedCount(page.scanned())
+                    .lastEvaluatedKey(page.lastKey())
+                    .consumedCapacity(capacity(request.tableName(), request.returnConsumedCapacity(), page.scanned()))
+                    .build();
+        });
+    }
+
+    // Items of one segment, segments split the table by hash of the partition key
+    @Override
+    public CompletableFuture<ScanResponse> scan(ScanRequest request) {
+        return this.call(() -> {
+            var table = this.table(request.tableName());
+            var keys = table.items.navigableKeySet();
+            if (request.totalSegments() != null) {
+                var segment = new TreeSet<String>();
+                for (var key : keys) {
+                    var partition = key.substring(0, key.indexOf(Table.SEPARATOR));
+                    if (Math.floorMod(partition.hashCode(), request.totalSegments()) == request.segment()) segment.add(key);
+                }
+                keys = segment;
+            }
+            var page = this.page(table, keys, request.exclusiveStartKey(), request.limit(), item ->
+                    Conditions.test(request.filterExpression(), item, request.expressionAttributeNames(), request.expressionAttributeValues()));
+            return ScanResponse.builder()
+                    .items(page.items())
+                    .count(page.items().size())
+                    .scannedCount(page.scanned())
+                    .lastEvaluatedKey(page.lastKey())
+                    .consumedCapacity(capacity(request.tableName(), request.returnConsumedCapacity(), page.scanned()))
+                    .build();
+        });
+    }
+
+    // The enhanced client reads through the paginators
+    @Override
+    public QueryPublisher queryPaginator(QueryRequest request) {
+        return new QueryPublisher(this, request);
+    }
+
+    @Override
+    public ScanPublisher scanPaginator(ScanRequest request) {
+        return new ScanPublisher(this, request);
+    }
+
+    private <T> CompletableFuture<T> call(Supplier<T> operation) {
+        if (this.faults.throttled())
+            return this.faults.fail(ProvisionedThroughputExceededException.builder()
+                    .message("The level of configured provisioned throughput for the table was exceeded")
+                    .statusCode(400)
+                    .build());
+        return this.faults.call(() -> this.locked(operation));
+    }
+
+    private synchronized <T> T locked(Supplier<T> operation) {
+        return operation.get();
+    }
+
+    private Table table(String name) {
+        var table = this.tables.get(name);
+        if (table == null) throw ResourceNotFoundException.builder().message("Table not found: " + name).statusCode(400).build();
+        return table;
+    }
+
+    @Nullable
+    private CancellationReason check(TransactWriteItem write) {
+        String tableName, condition;
+        Map<String, AttributeValue> key;
+        Map<String, String> names;
+        Map<String, AttributeValue> values;
+        ReturnValuesOnConditionCheckFailure returnValues;
+        if (write.put() != null) {
+            var put = write.put();
+            tableName = put.tableName();
+            key = put.item();
+            condition = put.conditionExpression();
+            names = put.expressionAttributeNames();
+            values = put.expressionAttributeValues();
+            returnValues = put.returnValuesOnConditionCheckFailure();
+        } else if (write.delete() != null) {
+            var delete = write.delete();
+            tableName = delete.tableName();
+            key = delete.key();
+            condition = delete.conditionExpression();
+            names = delete.expressionAttributeNames();
+            values = delete.expressionAttributeValues();
+            returnValues = delete.returnValuesOnConditionCheckFailure();
+        } else if (write.conditionCheck() != null) {
+            var check = write.conditionCheck();
+            tableName = check.tableName();
+            key = check.key();
+            condition = check.conditionExpression();
+            names = check.expressionAttributeNames();
+            values = check.expressionAttributeValues();
+            returnValues = check.returnValuesOnConditionCheckFailure();
+        } else {
+            throw new UnsupportedOperationException("TransactWriteItem update");
+        }
+        var table = this.table(tableName);
+        var old = table.items.get(table.key(key));
+        if (Conditions.test(condition, old, names, values)) return null;
+        var reason = CancellationReason.builder()
+                .code("ConditionalCheckFailed")
+                .message("The conditional request failed");
+        if (old != null && returnValues == ReturnValuesOnConditionCheckFailure.ALL_OLD) reason.item(old);
+        return reason.build();
+    }
+
+    // Up to limit keys after the start key, the items passing the filter and the key to resume from
+    private Page page(
+            Table table,
+            NavigableSet<String> keys,
+            @Nullable Map<String, AttributeValue> startKey,
+            @Nullable Integer limit,
+            Predicate<Map<String, AttributeValue>> filter) {
+        var remaining = startKey == null || startKey.isEmpty() ? keys : keys.tailSet(table.key(startKey), false);
+        var items = new ArrayList<Map<String, AttributeValue>>();
+        var scanned = 0;
+        Map<String, AttributeValue> last = null;
+        for (var key : remaining) {
+            if (limit != null && scanned == limit) // More items left, resumed after the last one read
+                return new Page(items, scanned, table.keyOf(last));
+            last = table.items.get(key);
+            scanned++;
+            if (filter.test(last)) items.add(last);
+        }
+        return new Page(items, scanned, null);
+    }
+
+    @Nullable
+    private static ConsumedCapacity capacity(String table, @Nullable ReturnConsumedCapacity requested, int scanned) {
+        if (requested == null || requested == ReturnConsumedCapacity.NONE) return null;
+        return ConsumedCapacity.builder()
+                .tableName(table)
+                .capacityUnits(Math.max(0.5, scanned * 0.5)) // Eventually consistent reads of items under 4 KB
+                .build();
+    }
+
+    private static ConditionalCheckFailedException conditionFailed() {
+        return ConditionalCheckFailedException.builder()
+                .message("The conditional request failed")
+                .statusCode(400)
+                .build();
+    }
+
+    private record Page(List<Map<String, AttributeValue>> items, int scanned, @Nullable Map<String, AttributeValue> lastKey) {
+    }
+
+    private record Index(String partitionKey, Map<String, NavigableSet<String>> entries) {
+        Index(String partitionKey) {
+            this(partitionKey, new HashMap<>());
+        }
+    }
+
+    // Items by <partition key><separator><sort key>, so the items of a partition are next to each other
+    private static final class Table {
+        static final char SEPARATOR = '\u0000';
+        final String partitionKey;
+        @Nullable
+        final String sortKey;
+        final NavigableMap<String, Map<String, AttributeValue>> items = new TreeMap<>();
+        final Map<String, Index> indexes = new HashMap<>();
+
+        Table(String partitionKey, @Nullable String sortKey) {
+            this.partitionKey = partitionKey;
+            this.sortKey = sortKey;
+        }
+
+        String key(Map<String, AttributeValue> item) {
+            var sort = this.sortKey == null ? null : item.get(this.sortKey);
+            return prefix(item.get(this.partitionKey)) + (sort == null ? "" : text(sort));
+        }
+
+        Map<String, AttributeValue> keyOf(Map<String, AttributeValue> item) {
+            var key = new HashMap<String, AttributeValue>();
+            key.put(this.partitionKey, item.get(this.partitionKey));
+            if (this.sortKey != null) key.put(this.sortKey, item.get(this.sortKey));
+            return key;
+        }
+
+        void put(Map<String, AttributeValue> item) {
+            var key = this.key(item);
+            this.unindex(key, this.items.put(key, Map.copyOf(item)));
+            this.indexes.values().forEach(index -> {
+                var value = item.get(index.partitionKey());
+                if (value != null) index.entries().computeIfAbsent(text(value), ignored -> new TreeSet<>()).add(key);
+            });
+        }
+
+        void remove(Map<String, AttributeValue> itemKey) {
+            var key = this.key(itemKey);
+            this.unindex(key, this.items.remove(key));
+        }
+
+        private void unindex(String key, @Nullable Map<String, AttributeValue> old) {
+            if (old == null) return;
+            this.indexes.values().forEach(index -> {
+                var value = old.get(index.partitionKey());
+                var entries = value == null ? null : index.entries().get(text(value));
+                if (entries != null && entries.remove(key) && entries.isEmpty()) index.entries().remove(text(value));
+            });
+        }
+
+        static String prefix(AttributeValue partition) {
+            return text(partition) + SEPARATOR;
+        }
+
+        static String text(AttributeValue value) {
+            if (value.s() != null) return value.s();
+            if (value.n() != null) return value.n();
+            throw new UnsupportedOperationException("Key of type " + value.type());
+        }
+    }
+}
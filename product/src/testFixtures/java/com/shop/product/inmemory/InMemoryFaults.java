@@ -0,0 +1,57 @@
+package com.shop.product.inmemory;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Latency and throttling of an in-memory AWS service
+// Every call completes on another thread after latency +- jitter, like the SDK completes on its event loop
+// A throttled call fails with the exception of the service without running
+public final class InMemoryFaults {
+    private final long latency;
+    private final long jitter;
+    private final double throttleRate;
+
+    public InMemoryFaults(Duration latency, Duration jitter, double throttleRate) {
+        this.latency = latency.toNanos();
+        this.jitter = jitter.toNanos();
+        this.throttleRate = throttleRate;
+    }
+
+    public boolean throttled() {
+        return this.throttleRate > 0 && ThreadLocalRandom.current().nextDouble() < this.throttleRate;
+    }
+
+    // Fails with a CompletionException around the exception of the operation, as the SDK futures do
+    <T> CompletableFuture<T> call(Supplier<T> operation) {
+        var future = new CompletableFuture<T>();
+        this.executor().execute(() -> {
+            try {
+                future.complete(operation.get());
+            } catch (RuntimeException e) {
+                future.completeExceptionally(new CompletionException(e));
+            }
+        });
+        return future;
+    }
+
+    <T> CompletableFuture<T> fail(RuntimeException e) {
+        return this.call(() -> {
+            throw e;
+        });
+    }
+
+    private Executor executor() {
+        var delay = this.jitter > 0
+                ? this.latency + ThreadLocalRandom.current().nextLong(-this.jitter, this.jitter + 1)
+                : this.latency;
+        return delay > 0
+                ? CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS)
+                : ForkJoinPool.commonPool();
+    }
+}
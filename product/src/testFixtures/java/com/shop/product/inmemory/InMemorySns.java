@@ -0,0 +1,70 @@
+package com.shop.product.inmemory;
+
+import software.amazon.awssdk.services.sns.SnsAsyncClient;
+import software.amazon.awssdk.services.sns.model.PublishBatchRequest;
+import software.amazon.awssdk.services.sns.model.PublishBatchResponse;
+import software.amazon.awssdk.services.sns.model.PublishBatchResultEntry;
+import software.amazon.awssdk.services.sns.model.PublishRequest;
+import software.amazon.awssdk.services.sns.model.PublishResponse;
+import software.amazon.awssdk.services.sns.model.ThrottledException;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+// SNS topic that accepts every message and keeps none, counts what was published
+public class InMemorySns implements SnsAsyncClient {
+    private final InMemoryFaults faults;
+    private final AtomicLong published = new AtomicLong();
+
+    public InMemorySns(InMemoryFaults faults) {
+        this.faults = faults;
+    }
+
+    public long published() {
+        return this.published.get();
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public CompletableFuture<PublishResponse> publish(PublishRequest request) {
+        if (this.faults.throttled()) return this.faults.fail(throttled());
+        return this.faults.call(() -> {
+            this.published.incrementAndGet();
+            return PublishResponse.builder()
+                    .messageId(UUID.randomUUID().toString())
+                    .build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<PublishBatchResponse> publishBatch(PublishBatchRequest request) {
+        if (this.faults.throttled()) return this.faults.fail(throttled());
+        return this.faults.call(() -> {
+            this.published.addAndGet(request.publishBatchRequestEntries().size());
+            return PublishBatchResponse.builder()
+                    .successful(request.publishBatchRequestEntries().stream()
+                            .map(entry -> PublishBatchResultEntry.builder()
+                                    .id(entry.id())
+                                    .messageId(UUID.randomUUID().toString())
+                                    .build())
+                            .toList())
+                    .build();
+        });
+    }
+
+    private static ThrottledException throttled() {
+        return ThrottledException.builder()
+                .message("Rate exceeded")
+                .statusCode(400)
+                .build();
+    }
+}
@@ -0,0 +1,62 @@
+#!/usr/bin/env bash
+# Time to first request and memory of the product service, for the JVM image (Dockerfile),
+# the AOT + CDS image (Dockerfile.cds) and the native image (Dockerfile.native)
+# ./startup-benchmark.sh [runs] [snapshot dir]
+# The first request is GET /actuator/health answering 200, once the catalog snapshot is handled
+# Runs the production configuration, the catalog snapshot and the id filter are on
+# Without a snapshot dir there is no snapshot to load, so neither the snapshot load nor the id filter
+# build is measured, pass a directory holding a product-catalog.snapshot to include them
+# The cache warming also needs a poll of the outbox change log, it is never measured here
+# No AWS calls are needed to start, the scans and polls fail in the background
+set -euo pipefail
+cd "$(dirname "$0")"
+
+RUNS=${1:-5}
+SNAPSHOT_DIR=${2:-}
+PORT=18080
+
+snapshot=()
+if [ -n "$SNAPSHOT_DIR" ]; then
+    snapshot=(-v "$(cd "$SNAPSHOT_DIR" && pwd):/snapshot" -e PRODUCT_SNAPSHOT_PATH=/snapshot/product-catalog.snapshot)
+    echo "Catalog snapshot of $SNAPSHOT_DIR: load and id filter build included, cache warming not (needs DynamoDB)"
+else
+    echo "No catalog snapshot: load, id filter build and cache warming not included"
+fi
+
+sh ./gradlew --no-daemon unpack
+docker build -q -t product:jvm -f Dockerfile . >/dev/null
+docker build -q -t product:cds -f Dockerfile.cds . >/dev/null
+docker build -q -t product:native -f Dockerfile.native . >/dev/null
+
+now_ms() {
+    date +%s%3N
+}
+
+run() {
+    local image=$1
+    local started container elapsed rss
+    started=$(now_ms)
+    container=$(docker run -d -p "$PORT:8080" \
+        -e AWS_ACCESS_KEY_ID=benchmark -e AWS_SECRET_ACCESS_KEY=benchmark \
+        ${snapshot[@]+"${snapshot[@]}"} \
+        "$image")
+    until curl -sf -o /dev/null "http://localhost:$PORT/actuator/health"; do
+        sleep 0.02
+    done
+    elapsed=$(( $(now_ms) - started ))
+    rss=$(docker stats --no-stream --format '{{.MemUsage}}' "$container" | cut -d/ -f1)
+    docker rm -f "$container" >/dev/null
+    echo "$elapsed $rss"
+}
+
+printf '%-16s %8s %8s %8s   %s\n' image min median max rss
+for image in product:jvm product:cds product:native; do
+    times=()
+    rss=
+    for _ in $(seq "$RUNS"); do
+        read -r elapsed rss < <(run "$image")
+        times+=("$elapsed")
+    done
+    sorted=($(printf '%s\n' "${times[@]}" | sort -n))
+    printf '%-16s %6sms %6sms %6sms   %s\n' "$image" "${sorted[0]}" "${sorted[$(( RUNS / 2 ))]}" "${sorted[$(( RUNS - 1 ))]}" "$rss"
+done
@@ -346,6 +346,7 @@ public class AuditStack extends Stack {
             put("AWS_SQS_PRODUCT_URL", queue.getQueueUrl());
             put("AWS_SQS_PRODUCT_FAILURE_URL", failureQueue.getQueueUrl());
             put("AWS_EVENTS_TABLE", table.getTableName());
+            put("SPRING_THREADS_VIRTUAL_ENABLED", String.valueOf(getNode().tryGetContext("virtualThreads"))); // cdk deploy -c virtualThreads=true
         }};
     }
 
@@ -359,6 +359,7 @@ public class InvoiceStack extends Stack {
             put("INVOICE_TABLE_NAME", table.getTableName());
             put("INVOICE_BUCKET_NAME", bucket.getBucketName());
             put("AWS_SQS_INVOICE_URL", queue.getQueueUrl());
+            put("SPRING_THREADS_VIRTUAL_ENABLED", String.valueOf(getNode().tryGetContext("virtualThreads"))); // cdk deploy -c virtualThreads=true
         }};
     }
 }
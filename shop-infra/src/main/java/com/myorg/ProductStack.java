@@ -20,19 +20,25 @@ import software.amazon.awscdk.services.ec2.Peer;
 import software.amazon.awscdk.services.ec2.Port;
 import software.amazon.awscdk.services.ec2.Vpc;
 import software.amazon.awscdk.services.ecr.Repository;
+import software.amazon.awscdk.services.ecs.AuthorizationConfig;
 import software.amazon.awscdk.services.ecs.AwsLogDriver;
 import software.amazon.awscdk.services.ecs.AwsLogDriverProps;
 import software.amazon.awscdk.services.ecs.Cluster;
 import software.amazon.awscdk.services.ecs.ContainerDefinitionOptions;
 import software.amazon.awscdk.services.ecs.ContainerImage;
 import software.amazon.awscdk.services.ecs.CpuUtilizationScalingProps;
+import software.amazon.awscdk.services.ecs.EfsVolumeConfiguration;
 import software.amazon.awscdk.services.ecs.FargateService;
 import software.amazon.awscdk.services.ecs.FargateServiceProps;
 import software.amazon.awscdk.services.ecs.FargateTaskDefinition;
 import software.amazon.awscdk.services.ecs.FargateTaskDefinitionProps;
 import software.amazon.awscdk.services.ecs.LoadBalancerTargetOptions;
+import software.amazon.awscdk.services.ecs.MountPoint;
 import software.amazon.awscdk.services.ecs.PortMapping;
 import software.amazon.awscdk.services.ecs.Protocol;
+import software.amazon.awscdk.services.ecs.Volume;
+import software.amazon.awscdk.services.efs.FileSystem;
+import software.amazon.awscdk.services.efs.FileSystemProps;
 import software.amazon.awscdk.services.elasticloadbalancingv2.AddApplicationTargetsProps;
 import software.amazon.awscdk.services.elasticloadbalancingv2.AddNetworkTargetsProps;
 import software.amazon.awscdk.services.elasticloadbalancingv2.ApplicationListenerProps;
@@ -111,6 +117,22 @@ public class ProductStack extends Stack {
                 // .writeCapacity(1) // PROVISIONED
                 .build());
 
+            // Product events committed with the product writes, drained to SNS by the relay
+            var outbox = new Table(this, "ProductOutboxDb", TableProps.builder()
+                .partitionKey(Attribute.builder()
+                    .name("shard") // events#<n> | changes#<n> | leases
+                    .type(AttributeType.STRING)
+                    .build())
+                .sortKey(Attribute.builder()
+                    .name("id")
+                    .type(AttributeType.STRING)
+                    .build())
+                .tableName("product-outbox")
+                .timeToLiveAttribute("ttl") // Expiry of the change log, epoch seconds
+                .removalPolicy(RemovalPolicy.DESTROY)
+                .billingMode(BillingMode.PAY_PER_REQUEST)
+                .build());
+
             // PROVISIONED
             // var readScale = table.autoScaleReadCapacity(software.amazon.awscdk.services.dynamodb.EnableScalingProps.builder()
             //     .maxCapacity(4)
@@ -155,9 +177,27 @@ public class ProductStack extends Stack {
 
             // Access granted by DynamoDB table to the ECS task
             table.grantReadWriteData(taskDefinition.getTaskRole());
+            outbox.grantReadWriteData(taskDefinition.getTaskRole());
             // Publish granted by SNS topic to the ECS task
             this.snsTopic.grantPublish(taskDefinition.getTaskRole());
 
+            // Catalog snapshot shared by the tasks, a new task warms its caches from it
+            var catalog = new FileSystem(this, "product-catalog", FileSystemProps.builder()
+                .vpc(productStackProps.vpc())
+                .removalPolicy(RemovalPolicy.DESTROY) // Rebuilt from the table
+                .build());
+            catalog.grantReadWrite(taskDefinition.getTaskRole());
+            taskDefinition.addVolume(Volume.builder()
+                .name("product-catalog")
+                .efsVolumeConfiguration(EfsVolumeConfiguration.builder()
+                    .fileSystemId(catalog.getFileSystemId())
+                    .transitEncryption("ENABLED")
+                    .authorizationConfig(AuthorizationConfig.builder()
+                        .iam("ENABLED") // Task role
+                        .build())
+                    .build())
+                .build());
+
             // Product CloudWatch
             var productLogDriver = new AwsLogDriver(AwsLogDriverProps.builder()
                 .logGroup(new LogGroup(this, "product",
@@ -173,16 +213,19 @@ public class ProductStack extends Stack {
             var env = new HashMap<String, String>() {{
                 put("SERVER_PORT", "8080");
                 put("AWS_PRODUCT_TABLE_NAME", table.getTableName()); // AWS SDK needs to know the table name so the Spring Boot service knows the target table
+                put("AWS_PRODUCT_OUTBOX_TABLE_NAME", outbox.getTableName());
                 put("AWS_SNS_TOPIC_PRODUCT_EVENTS", snsTopic.getTopicArn()); // AWS SDK needs to know topic AWS resource name (arn) knows the target topic
                 put("AWS_REGION", getRegion());
                 put("AWS_XRAY_DAEMON_ADDRESS", "0.0.0.0:2000"); // UDP
                 put("AWS_XRAY_CONTEXT_MISSING", "IGNORE_ERROR"); // Ignores this error in CloudWatch Logs
                 put("AWS_XRAY_TRACING_NAME", "product-tracing");
                 put("LOGGING_LEVEL_ROOT", "INFO"); // Binds to and controls the log level in Spring Boot
+                put("PRODUCT_SNAPSHOT_PATH", "/mnt/catalog/products.snapshot");
+                put("SPRING_THREADS_VIRTUAL_ENABLED", String.valueOf(getNode().tryGetContext("virtualThreads"))); // cdk deploy -c virtualThreads=true
             }};
 
             // Product container
-            taskDefinition.addContainer("product-container", ContainerDefinitionOptions.builder()
+            var productContainer = taskDefinition.addContainer("product-container", ContainerDefinitionOptions.builder()
                 .image(ContainerImage.fromEcrRepository(productStackProps.repository(), "1.8.0"))
                 .containerName("product-container")
                 .logging(productLogDriver)
@@ -194,6 +237,11 @@ public class ProductStack extends Stack {
                 .cpu(384) // Out of the 512 defined in the task definition
                 .memoryLimitMiB(896)
                 .build());
+            productContainer.addMountPoints(MountPoint.builder()
+                .sourceVolume("product-catalog")
+                .containerPath("/mnt/catalog")
+                .readOnly(false)
+                .build());
 
             // XRay CloudWatch - product
             var xrayLogDriver = new AwsLogDriver(AwsLogDriverProps.builder()
@@ -254,6 +302,7 @@ public class ProductStack extends Stack {
                 .addIngressRule(
                     Peer.ipv4(productStackProps.vpc().getVpcCidrBlock()), 
                     Port.tcp(8080));
+            catalog.getConnections().allowDefaultPortFrom(fargateService); // NFS
 
             // Target groups
             applicationListener.addTargets("product-application-targets", AddApplicationTargetsProps.builder()